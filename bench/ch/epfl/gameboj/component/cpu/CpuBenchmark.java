@@ -0,0 +1,262 @@
+package ch.epfl.gameboj.component.cpu;
+
+import ch.epfl.gameboj.AddressMap;
+import ch.epfl.gameboj.Bus;
+import ch.epfl.gameboj.Scheduler;
+import ch.epfl.gameboj.component.Timer;
+import ch.epfl.gameboj.component.memory.Ram;
+import ch.epfl.gameboj.component.memory.RamController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CpuBenchmark
+ *
+ * Measures the throughput of the Cpu on small programs run from ram, like
+ * the Cpu tests do. Scores are in operations per microsecond, that is
+ * millions of emulated instructions (or interrupts) per second
+ *
+ * @author Ulysse Ramage (282300)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CpuBenchmark {
+
+    /** Iterations of the loop body per pass */
+    private static final int LOOP_ITERATIONS = 256;
+
+    /** Sets SP below IE, clears IF and sets the loop counter C */
+    private static final String PROLOGUE = "31 FE FF AF E0 0F 0E 00";
+
+    /** Instructions of a pass besides the loop body */
+    private static final int PASS_INSTRUCTIONS = 6;
+
+    private static final int ALU_R8_BODY = 15;
+    private static final int HL_MEMORY_BODY = 15;
+    private static final int JUMPS_CALLS_BODY = 12;
+    private static final int BIT_OPS_BODY = 15;
+    private static final int INTERRUPT_BODY = 5;
+
+    /** Timer interrupts per invocation of the HALT benchmark */
+    private static final int HALT_WAKEUPS = 256;
+    private static final int CYCLES_PER_TIMER_INTERRUPT = 64;
+
+    /**
+     * A Cpu connected to a ram and a scheduler, running a program in passes.
+     * A pass runs the {@link #PROLOGUE}, then the loop body
+     * {@link #LOOP_ITERATIONS} times, halts and starts over once woken up
+     * by a VBLANK interrupt
+     */
+    @State(Scope.Thread)
+    public static abstract class Machine {
+
+        /** The Cpu options to benchmark, separated by commas */
+        @Param({ "", "TIERED_EXECUTION", "LAZY_FLAGS", "ALU_TABLES" })
+        public String options;
+
+        protected Bus bus;
+        protected Cpu cpu;
+        protected Scheduler scheduler;
+
+        @Setup
+        public void setup() {
+            cpu = new Cpu(options.isEmpty() ? new Cpu.Option[0] :
+                    Arrays.stream(options.split(","))
+                            .map(Cpu.Option::valueOf)
+                            .toArray(Cpu.Option[]::new));
+            bus = new Bus();
+            cpu.attachTo(bus);
+            new RamController(new Ram(AddressMap.WORK_RAM_SIZE), 0).attachTo(bus);
+            scheduler = new Scheduler();
+            cpu.attachTo(scheduler);
+
+            int start = bytes(PROLOGUE).length;
+            int end = start + bytes(body()).length;
+            load(0, bytes(String.join(" ", PROLOGUE, body(), "0D")));
+            load(end + 1, new int[] { 0x20, (start - end - 3) & 0xFF });
+            load(end + 3, bytes(String.join(" ", epilogue(), "76 C3 00 00")));
+            bus.write(AddressMap.REG_IE, Cpu.Interrupt.VBLANK.mask());
+            prepare();
+
+            // The first pass doesn't start with the jump back to 0
+            scheduler.runUntil(1_000_000);
+        }
+
+        /** @return the instructions of the loop body, which must not use C */
+        protected abstract String body();
+
+        /** @return the instructions to run between the loop and the halt */
+        protected String epilogue() {
+            return "";
+        }
+
+        /** Prepares the memory and the registers used by the body */
+        protected void prepare() {}
+
+        protected final void load(int address, int[] program) {
+            for (int i = 0; i < program.length; ++i)
+                bus.write(address + i, program[i]);
+        }
+
+        /** Runs a pass of the program */
+        void runPass() {
+            cpu.requestInterrupt(Cpu.Interrupt.VBLANK);
+            scheduler.runUntil(scheduler.cycles() + 1_000_000);
+        }
+
+    }
+
+    public static class AluR8 extends Machine {
+        @Override
+        protected String body() {
+            return "80 8A 93 9C A5 A8 B2 BB 04 15 87 27 2F 3C 9D";
+        }
+    }
+
+    public static class HlMemory extends Machine {
+        @Override
+        protected String body() {
+            return "21 00 10 77 46 34 86 22 3A 35 96 36 42 A6 E5 D1 70 BE";
+        }
+    }
+
+    public static class JumpsCalls extends Machine {
+        @Override
+        protected String body() {
+            // Starts at 08: JR, JP, CALL, JP HL, RST 38, CALL, JR, JP
+            return "18 00 C3 0D 00 CD 00 01 21 14 00 E9 FF CD 00 01 18 00 C3 1D 00";
+        }
+
+        @Override
+        protected void prepare() {
+            bus.write(0x0038, 0xC9);
+            bus.write(0x0100, 0xC9);
+        }
+    }
+
+    public static class BitOps extends Machine {
+        @Override
+        protected String body() {
+            return "CB 40 CB 7A CB C3 CB 84 CB 37 CB 10 CB 1A CB 23 "
+                    + "CB 2C CB 3D CB 05 CB 0F CB FF CB 87 CB 50";
+        }
+    }
+
+    public static class Interrupts extends Machine {
+        @Override
+        protected String body() {
+            // EI, then request a TIMER interrupt, handled by a RETI
+            return "FB 3E 04 E0 0F";
+        }
+
+        @Override
+        protected String epilogue() {
+            return "F3";
+        }
+
+        @Override
+        protected void prepare() {
+            bus.write(AddressMap.INTERRUPTS[Cpu.Interrupt.TIMER.index()], 0xD9);
+            bus.write(AddressMap.REG_IE,
+                    Cpu.Interrupt.VBLANK.mask() | Cpu.Interrupt.TIMER.mask());
+        }
+    }
+
+    /**
+     * A Cpu that clears IF and halts in a loop, woken up by the timer
+     * every {@link #CYCLES_PER_TIMER_INTERRUPT} cycles
+     */
+    @State(Scope.Thread)
+    public static class Halt {
+
+        @Param({ "", "TIERED_EXECUTION" })
+        public String options;
+
+        private Scheduler scheduler;
+
+        @Setup
+        public void setup() {
+            Cpu cpu = new Cpu(options.isEmpty() ? new Cpu.Option[0] :
+                    new Cpu.Option[] { Cpu.Option.valueOf(options) });
+            Bus bus = new Bus();
+            cpu.attachTo(bus);
+            new RamController(new Ram(AddressMap.WORK_RAM_SIZE), 0).attachTo(bus);
+            Timer timer = new Timer(cpu);
+            timer.attachTo(bus);
+            scheduler = new Scheduler();
+            timer.attachTo(scheduler);
+            cpu.attachTo(scheduler);
+
+            int[] program = bytes("31 FE FF AF E0 0F 76 C3 03 00");
+            for (int i = 0; i < program.length; ++i)
+                bus.write(i, program[i]);
+            bus.write(AddressMap.REG_IE, Cpu.Interrupt.TIMER.mask());
+            bus.write(AddressMap.REG_TMA, 0x100 - CYCLES_PER_TIMER_INTERRUPT / 4);
+            bus.write(AddressMap.REG_TAC, 0b101);
+        }
+
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOP_ITERATIONS * (ALU_R8_BODY + 2) + PASS_INSTRUCTIONS)
+    public void aluR8(AluR8 machine) {
+        machine.runPass();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOP_ITERATIONS * (HL_MEMORY_BODY + 2) + PASS_INSTRUCTIONS)
+    public void hlMemory(HlMemory machine) {
+        machine.runPass();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOP_ITERATIONS * (JUMPS_CALLS_BODY + 2) + PASS_INSTRUCTIONS)
+    public void jumpsCalls(JumpsCalls machine) {
+        machine.runPass();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOP_ITERATIONS * (BIT_OPS_BODY + 2) + PASS_INSTRUCTIONS)
+    public void bitOps(BitOps machine) {
+        machine.runPass();
+    }
+
+    /** Operations are instructions and interrupt dispatches */
+    @Benchmark
+    @OperationsPerInvocation(LOOP_ITERATIONS * (INTERRUPT_BODY + 2) + PASS_INSTRUCTIONS + 1)
+    public void interruptDispatch(Interrupts machine) {
+        machine.runPass();
+    }
+
+    /** Operations are wakeups from HALT */
+    @Benchmark
+    @OperationsPerInvocation(HALT_WAKEUPS)
+    public void haltWakeup(Halt halt) {
+        Scheduler scheduler = halt.scheduler;
+        scheduler.runUntil(scheduler.cycles() + HALT_WAKEUPS * CYCLES_PER_TIMER_INTERRUPT);
+    }
+
+    private static int[] bytes(String program) {
+        return Arrays.stream(program.trim().split("\\s+"))
+                .filter(s -> !s.isEmpty())
+                .mapToInt(s -> Integer.parseInt(s, 16))
+                .toArray();
+    }
+
+}
@@ -4,8 +4,10 @@ public interface AddressMap {
     int[] RESETS = new int[] { 0x00, 0x08, 0x10, 0x18, 0x20, 0x28, 0x30, 0x38 };
     int[] INTERRUPTS = new int[]{ 0x40, 0x48, 0x50, 0x58, 0x60 };
 
+    int CARTRIDGE_ROM_START = 0x0000, CARTRIDGE_ROM_END = 0x8000, CARTRIDGE_ROM_SIZE = CARTRIDGE_ROM_END - CARTRIDGE_ROM_START;
     int BOOT_ROM_START = 0x0000, BOOT_ROM_END = 0x0100, BOOT_ROM_SIZE = BOOT_ROM_END - BOOT_ROM_START;
     int VIDEO_RAM_START = 0x8000, VIDEO_RAM_END = 0xA000, VIDEO_RAM_SIZE = VIDEO_RAM_END - VIDEO_RAM_START;
+    int CARTRIDGE_RAM_START = 0xA000, CARTRIDGE_RAM_END = 0xC000, CARTRIDGE_RAM_SIZE = CARTRIDGE_RAM_END - CARTRIDGE_RAM_START;
     int WORK_RAM_START = 0xC000, WORK_RAM_END = 0xE000, WORK_RAM_SIZE = WORK_RAM_END - WORK_RAM_START;
     int ECHO_RAM_START = 0xE000, ECHO_RAM_END = 0xFE00, ECHO_RAM_SIZE = ECHO_RAM_END - ECHO_RAM_START;
     int OAM_START = 0xFE00, OAM_END = 0xFEA0, OAM_RAM_SIZE = OAM_END - OAM_START;
@@ -24,6 +26,7 @@ public interface AddressMap {
     int REG_TAC = 0xFF07;
     int REG_IF = 0xFF0F;
     int REGS_LCDC_START = 0xFF40, REGS_LCDC_END = 0xFF4C;
+    int REG_DMA = 0xFF46;
     int REG_BOOT_ROM_DISABLE = 0xFF50;
     int REG_IE = 0xFFFF;
 }
@@ -3,27 +3,168 @@ package ch.epfl.gameboj;
 import ch.epfl.gameboj.component.Component;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
 
 /**
  * Bus
  *
  * A class representing a Bus that can be used to connect components together
  *
+ * Accesses are routed through a page table built when components attach: one
+ * entry per high address byte, except for the pages starting at
+ * {@code SUB_PAGES_START} (OAM, I/O registers and high ram), which are shared
+ * by many components and therefore have one entry per address
+ *
+ * Plain memory regions, backed by a byte array, can be attached as well:
+ * when such a region is alone on a page / address, accesses to it are
+ * direct array accesses that don't go through any component
+ *
+ * Likewise, each I/O register (from {@code AddressMap.REGS_START}) can be
+ * bound to its own read and write handlers, which are called directly when
+ * nothing else is attached to the register
+ *
+ * Accesses to the memory below the I/O registers can be blocked, as they
+ * are during an OAM DMA transfer: reads then give 0xFF and writes are
+ * ignored. Block accesses aren't affected
+ *
+ * The bus also counts the modifications of each page, so that components
+ * caching data derived from memory (such as decoded instructions) can tell
+ * when it becomes stale. Pages of memory regions sharing their backing array
+ * (such as the echo ram) are counted as modified together
+ *
  * @author Ulysse Ramage (282300)
  */
 public final class Bus {
 
-    private final ArrayList<Component> attachedComponents = new ArrayList<>();
+    private static final int ADDRESS_SPACE_SIZE = 0x10000;
+    /** Size of the pages whose modifications are counted */
+    public static final int PAGE_SIZE = 0x100;
+    private static final int SUB_PAGES_START = 0xFE00;
+    private static final int SUB_PAGES_SLOT = SUB_PAGES_START / PAGE_SIZE;
+    private static final int SLOTS =
+            SUB_PAGES_SLOT + (ADDRESS_SPACE_SIZE - SUB_PAGES_START);
+    private static final Component[] NO_COMPONENTS = new Component[0];
+
+    /**
+     * Components attached to each slot (a page, or an address from
+     * {@code SUB_PAGES_START}), in attachment order
+     */
+    private final Component[][] slotTable = new Component[SLOTS][];
+
+    /**
+     * Backing array of the memory region alone on each slot (null if there is
+     * none), and the offset to add to an address to get its index
+     */
+    private final byte[][] slotMemories = new byte[SLOTS][];
+    private final int[] slotMemoryOffsets = new int[SLOTS];
+
+    /** Handlers of the register alone at each I/O address (null if none) */
+    private final IntSupplier[] registerReaders =
+            new IntSupplier[ADDRESS_SPACE_SIZE - AddressMap.REGS_START];
+    private final IntConsumer[] registerWriters =
+            new IntConsumer[ADDRESS_SPACE_SIZE - AddressMap.REGS_START];
+
+    private boolean memoryBlocked;
+
+    /** Number of modifications of each page */
+    private final int[] pageModifications =
+            new int[ADDRESS_SPACE_SIZE / PAGE_SIZE];
+
+    /**
+     * Other pages backed by the same memory as each page (null if there is
+     * none), which are counted as modified along with it
+     */
+    private final int[][] pageAliases = new int[ADDRESS_SPACE_SIZE / PAGE_SIZE][];
+    private final List<MemoryRegion> memoryRegions = new ArrayList<>();
+
+    /**
+     * Creates a new Bus without any attached component
+     */
+    public Bus() {
+        Arrays.fill(slotTable, NO_COMPONENTS);
+    }
 
     /**
-     * Attaches a component to the Bus
+     * Attaches a component to the Bus, over the whole address space
      * @param component a Component
      * @throws NullPointerException if {@code component} is null
      */
     public void attach(Component component) {
+        attach(component, 0, ADDRESS_SPACE_SIZE);
+    }
+
+    /**
+     * Attaches a component to the Bus, over the given address range only.
+     * A component can be attached over several ranges
+     * @param component a Component
+     * @param startAddress the first address of the range
+     * @param endAddress the end address of the range (excluded)
+     * @throws NullPointerException if {@code component} is null
+     * @throws IllegalArgumentException if {@code startAddress} isn't 16-bit,
+     * or if the range is negative or exceeds the address space
+     */
+    public void attach(Component component, int startAddress, int endAddress) {
         Objects.requireNonNull(component);
-        attachedComponents.add(component);
+        Preconditions.checkBits16(startAddress);
+        Preconditions.checkArgument(startAddress <= endAddress
+                && endAddress <= ADDRESS_SPACE_SIZE);
+
+        if (startAddress == endAddress)
+            return;
+        for (int slot = slot(startAddress); slot <= slot(endAddress - 1); ++slot) {
+            slotTable[slot] = withComponent(slotTable[slot], component);
+            updateDirectAccesses(slot);
+        }
+    }
+
+    /**
+     * Attaches a plain memory region to the Bus: the value at an address of
+     * the range is stored in {@code memory}, at index
+     * {@code offset + address - startAddress}. Regions can share their
+     * backing array, in which case a modification of the values of one is a
+     * modification of the others
+     * @param memory the backing array of the region
+     * @param offset the index of the value at {@code startAddress}
+     * @param startAddress the first address of the range
+     * @param endAddress the end address of the range (excluded)
+     * @throws NullPointerException if {@code memory} is null
+     * @throws IllegalArgumentException if {@code startAddress} isn't 16-bit,
+     * or if the range is negative or exceeds the address space
+     * @throws IndexOutOfBoundsException if the range exceeds {@code memory}
+     */
+    public void attachMemory(byte[] memory, int offset, int startAddress, int endAddress) {
+        Objects.requireNonNull(memory);
+        Preconditions.checkArgument(startAddress <= endAddress);
+        Objects.checkFromToIndex(offset, offset + endAddress - startAddress, memory.length);
+        MemoryRegion region = new MemoryRegion(memory, offset, startAddress, endAddress);
+        attach(region, startAddress, endAddress);
+        for (MemoryRegion other : memoryRegions) {
+            if (other.memory == memory)
+                addAliases(region, other);
+        }
+        memoryRegions.add(region);
+    }
+
+    /**
+     * Attaches handlers to an I/O register
+     * @param address the address of the register
+     * @param reader gives the value of the register, or
+     * {@link Component#NO_DATA} if it has none
+     * @param writer stores a new value in the register
+     * @throws NullPointerException if {@code reader} or {@code writer} is null
+     * @throws IllegalArgumentException if {@code address} isn't the address
+     * of an I/O register
+     */
+    public void attachRegister(int address, IntSupplier reader, IntConsumer writer) {
+        Objects.requireNonNull(reader);
+        Objects.requireNonNull(writer);
+        Preconditions.checkArgument(AddressMap.REGS_START <= address
+                && address < ADDRESS_SPACE_SIZE);
+        attach(new RegisterHandler(address, reader, writer), address, address + 1);
     }
 
     /**
@@ -31,11 +172,28 @@ public final class Bus {
      * @param address the address to read data at
      * @return the value stored at {@code address} if at least one of the
      * components attached to the bus have a value at {@code address}, else 0xFF
-     * @throws IllegalArgumentException if {@code address} isn't 16-bit
+     * @throws IllegalArgumentException if {@code address} isn't 16-bit, and
+     * isn't in a plain memory region once clipped to 16 bits
      */
     public int read(int address) {
+        // Plain memory is read with a single array index: the address is
+        // clipped rather than checked, which is only done on the other paths
+        int clipped = address & (ADDRESS_SPACE_SIZE - 1);
+        int slot = slot(clipped);
+        byte[] memory = slotMemories[slot];
+        if (memory != null && !isBlocked(clipped))
+            return Byte.toUnsignedInt(memory[clipped + slotMemoryOffsets[slot]]);
         Preconditions.checkBits16(address);
-        for (Component component : attachedComponents) {
+        if (isBlocked(address))
+            return 0xFF;
+        if (address >= AddressMap.REGS_START) {
+            IntSupplier reader = registerReaders[address - AddressMap.REGS_START];
+            if (reader != null) {
+                int value = reader.getAsInt();
+                return (value != Component.NO_DATA) ? value : 0xFF;
+            }
+        }
+        for (Component component : slotTable[slot]) {
             int value = component.read(address);
             if (value != Component.NO_DATA)
                 return value;
@@ -47,17 +205,335 @@ public final class Bus {
      * Writes a value at the given address to all the attached components
      * @param address the address to write at
      * @param data the data to write
-     * @throws IllegalArgumentException if {@code address} isn't 16-bit,
-     * or {@code data} isn't 8-bit
+     * @throws IllegalArgumentException if {@code data} isn't 8-bit, or if
+     * {@code address} isn't 16-bit, and isn't in a plain memory region once
+     * clipped to 16 bits
      */
     public void write(int address, int data) {
-        Preconditions.checkBits16(address);
         Preconditions.checkBits8(data);
-        for (Component component : attachedComponents) {
+        // Same single array index as for reads
+        int clipped = address & (ADDRESS_SPACE_SIZE - 1);
+        int slot = slot(clipped);
+        byte[] memory = slotMemories[slot];
+        if (memory != null && !isBlocked(clipped)) {
+            markPageModified(clipped / PAGE_SIZE);
+            memory[clipped + slotMemoryOffsets[slot]] = (byte) data;
+            return;
+        }
+        Preconditions.checkBits16(address);
+        if (isBlocked(address))
+            return;
+        markPageModified(address / PAGE_SIZE);
+        if (address >= AddressMap.REGS_START) {
+            IntConsumer writer = registerWriters[address - AddressMap.REGS_START];
+            if (writer != null) {
+                writer.accept(data);
+                return;
+            }
+        }
+        for (Component component : slotTable[slot]) {
             component.write(address, data);
         }
     }
 
+    /**
+     * Reads a block of consecutive values, like {@link #read(int)} would one
+     * at a time, except that the values of plain memory regions are copied at
+     * once, and that each component is asked for its part of the block at once
+     * @param address the address of the first value
+     * @param dst the array to store the values in
+     * @param offset the index of the first value in {@code dst}
+     * @param length the number of values to read
+     * @throws IllegalArgumentException if the block isn't within the address
+     * space
+     * @throws IndexOutOfBoundsException if the block exceeds {@code dst}
+     */
+    public void readBlock(int address, byte[] dst, int offset, int length) {
+        Preconditions.checkBlock(address, dst, offset, length);
+        int end = address + length;
+        for (int start = address; start < end; ) {
+            int slot = slot(start);
+            int slotEnd = Math.min(slotEnd(slot), end);
+            int index = offset + start - address;
+            byte[] memory = slotMemories[slot];
+            if (memory != null) {
+                System.arraycopy(memory, start + slotMemoryOffsets[slot],
+                        dst, index, slotEnd - start);
+            } else {
+                Arrays.fill(dst, index, index + slotEnd - start, (byte) 0xFF);
+                // In reverse, so that the first component having data wins
+                Component[] components = slotTable[slot];
+                for (int i = components.length - 1; i >= 0; --i)
+                    components[i].readBlock(start, dst, index, slotEnd - start);
+            }
+            start = slotEnd;
+        }
+    }
+
+    /**
+     * Writes a block of consecutive values to all the attached components,
+     * like {@link #write(int, int)} would one at a time, except that the
+     * values of plain memory regions are copied at once, and that each
+     * component is given its part of the block at once
+     * @param address the address of the first value
+     * @param src the array holding the values to write
+     * @param offset the index of the first value in {@code src}
+     * @param length the number of values to write
+     * @throws IllegalArgumentException if the block isn't within the address
+     * space
+     * @throws IndexOutOfBoundsException if the block exceeds {@code src}
+     */
+    public void writeBlock(int address, byte[] src, int offset, int length) {
+        Preconditions.checkBlock(address, src, offset, length);
+        markModified(address, address + length);
+        int end = address + length;
+        for (int start = address; start < end; ) {
+            int slot = slot(start);
+            int slotEnd = Math.min(slotEnd(slot), end);
+            int index = offset + start - address;
+            byte[] memory = slotMemories[slot];
+            if (memory != null) {
+                System.arraycopy(src, index, memory,
+                        start + slotMemoryOffsets[slot], slotEnd - start);
+            } else {
+                for (Component component : slotTable[slot])
+                    component.writeBlock(start, src, index, slotEnd - start);
+            }
+            start = slotEnd;
+        }
+    }
+
+    /**
+     * Blocks or unblocks the accesses to the memory below the I/O registers
+     * through {@link #read(int)} and {@link #write(int, int)}. Components
+     * caching data derived from memory must not cache what they read while
+     * the memory is blocked
+     * @param blocked whether the accesses are blocked
+     */
+    public void setMemoryBlocked(boolean blocked) {
+        memoryBlocked = blocked;
+    }
+
+    /**
+     * @return true if and only if the accesses to the memory below the I/O
+     * registers are blocked
+     */
+    public boolean isMemoryBlocked() {
+        return memoryBlocked;
+    }
+
+    /**
+     * Gives the number of modifications of the page containing an address,
+     * which changes whenever a value of the page may have changed
+     * @param address an address of the page
+     * @return the modification count of the page
+     * @throws IllegalArgumentException if {@code address} isn't 16-bit
+     */
+    public int modificationCount(int address) {
+        Preconditions.checkBits16(address);
+        return pageModifications[address / PAGE_SIZE];
+    }
+
+    /**
+     * Marks an address range as modified. Must be called by components whose
+     * values change without being written to through the bus (for instance
+     * when a rom bank is switched)
+     * @param startAddress the first address of the range
+     * @param endAddress the end address of the range (excluded)
+     * @throws IllegalArgumentException if {@code startAddress} isn't 16-bit,
+     * or if the range is negative or exceeds the address space
+     */
+    public void markModified(int startAddress, int endAddress) {
+        Preconditions.checkBits16(startAddress);
+        Preconditions.checkArgument(startAddress <= endAddress
+                && endAddress <= ADDRESS_SPACE_SIZE);
+        if (startAddress == endAddress)
+            return;
+        for (int page = startAddress / PAGE_SIZE;
+             page <= (endAddress - 1) / PAGE_SIZE; ++page) {
+            markPageModified(page);
+        }
+    }
+
+    private void markPageModified(int page) {
+        pageModifications[page]++;
+        int[] aliases = pageAliases[page];
+        if (aliases != null) {
+            for (int alias : aliases)
+                pageModifications[alias]++;
+        }
+    }
+
+    /**
+     * Makes the pages of two regions backed by the same array aliases of
+     * each other wherever their values overlap
+     */
+    private void addAliases(MemoryRegion region, MemoryRegion other) {
+        int start = Math.max(region.offset, other.offset);
+        int end = Math.min(region.offset + region.endAddress - region.startAddress,
+                other.offset + other.endAddress - other.startAddress);
+        // Distance from an address of the region to the alias of its value
+        int distance = (other.startAddress - other.offset) - (region.startAddress - region.offset);
+        for (int index = start; index < end; ) {
+            int address = region.startAddress + index - region.offset;
+            int pageEnd = Math.min((address / PAGE_SIZE + 1) * PAGE_SIZE,
+                    address + end - index);
+            for (int page = (address + distance) / PAGE_SIZE;
+                 page <= (pageEnd - 1 + distance) / PAGE_SIZE; ++page) {
+                addAlias(address / PAGE_SIZE, page);
+                addAlias(page, address / PAGE_SIZE);
+            }
+            index += pageEnd - address;
+        }
+    }
+
+    private void addAlias(int page, int alias) {
+        int[] aliases = (pageAliases[page] != null) ? pageAliases[page] : new int[0];
+        if (page == alias || Arrays.stream(aliases).anyMatch(a -> a == alias))
+            return;
+        aliases = Arrays.copyOf(aliases, aliases.length + 1);
+        aliases[aliases.length - 1] = alias;
+        pageAliases[page] = aliases;
+    }
+
+    /** @return true if accesses to the given address are blocked */
+    private boolean isBlocked(int address) {
+        return memoryBlocked && address < AddressMap.REGS_START;
+    }
+
+    private static int slot(int address) {
+        return address < SUB_PAGES_START
+                ? address / PAGE_SIZE
+                : SUB_PAGES_SLOT + address - SUB_PAGES_START;
+    }
+
+    private static int slotStart(int slot) {
+        return slot < SUB_PAGES_SLOT
+                ? slot * PAGE_SIZE
+                : SUB_PAGES_START + slot - SUB_PAGES_SLOT;
+    }
+
+    private static int slotEnd(int slot) {
+        return slot < SUB_PAGES_SLOT ? slotStart(slot) + PAGE_SIZE : slotStart(slot) + 1;
+    }
 
+    /**
+     * Enables direct accesses to a slot covered by a memory region only, or to
+     * an I/O register without any other component
+     */
+    private void updateDirectAccesses(int slot) {
+        Component[] components = slotTable[slot];
+        slotMemories[slot] = null;
+        int start = slotStart(slot);
+        if (start >= AddressMap.REGS_START) {
+            registerReaders[start - AddressMap.REGS_START] = null;
+            registerWriters[start - AddressMap.REGS_START] = null;
+            if (components.length == 1 && components[0] instanceof RegisterHandler) {
+                RegisterHandler handler = (RegisterHandler) components[0];
+                registerReaders[start - AddressMap.REGS_START] = handler.reader;
+                registerWriters[start - AddressMap.REGS_START] = handler.writer;
+            }
+        }
+        if (components.length == 1 && components[0] instanceof MemoryRegion) {
+            MemoryRegion region = (MemoryRegion) components[0];
+            if (region.startAddress <= start && slotEnd(slot) <= region.endAddress) {
+                slotMemories[slot] = region.memory;
+                slotMemoryOffsets[slot] = region.offset - region.startAddress;
+            }
+        }
+    }
+
+    /** Appends a component to an entry, unless it is already in it */
+    private static Component[] withComponent(Component[] entry, Component component) {
+        for (Component c : entry) {
+            if (c == component)
+                return entry;
+        }
+        Component[] newEntry = Arrays.copyOf(entry, entry.length + 1);
+        newEntry[entry.length] = component;
+        return newEntry;
+    }
+
+    /**
+     * MemoryRegion
+     *
+     * A plain memory region, accessed as a component when it shares its slot
+     * with other components
+     */
+    private static final class MemoryRegion implements Component {
+
+        private final byte[] memory;
+        private final int offset, startAddress, endAddress;
+
+        MemoryRegion(byte[] memory, int offset, int startAddress, int endAddress) {
+            this.memory = memory;
+            this.offset = offset;
+            this.startAddress = startAddress;
+            this.endAddress = endAddress;
+        }
+
+        @Override
+        public int read(int address) {
+            if (startAddress <= address && address < endAddress)
+                return Byte.toUnsignedInt(memory[offset + address - startAddress]);
+            return NO_DATA;
+        }
+
+        @Override
+        public void write(int address, int data) {
+            if (startAddress <= address && address < endAddress)
+                memory[offset + address - startAddress] = (byte) data;
+        }
+
+        @Override
+        public void readBlock(int address, byte[] dst, int offset, int length) {
+            int start = Math.max(address, startAddress);
+            int end = Math.min(address + length, endAddress);
+            if (start < end)
+                System.arraycopy(memory, this.offset + start - startAddress,
+                        dst, offset + start - address, end - start);
+        }
+
+        @Override
+        public void writeBlock(int address, byte[] src, int offset, int length) {
+            int start = Math.max(address, startAddress);
+            int end = Math.min(address + length, endAddress);
+            if (start < end)
+                System.arraycopy(src, offset + start - address,
+                        memory, this.offset + start - startAddress, end - start);
+        }
+
+    }
+
+    /**
+     * RegisterHandler
+     *
+     * The handlers of an I/O register, called as a component when the
+     * register shares its address with other components
+     */
+    private static final class RegisterHandler implements Component {
+
+        private final int address;
+        private final IntSupplier reader;
+        private final IntConsumer writer;
+
+        RegisterHandler(int address, IntSupplier reader, IntConsumer writer) {
+            this.address = address;
+            this.reader = reader;
+            this.writer = writer;
+        }
+
+        @Override
+        public int read(int address) {
+            return (address == this.address) ? reader.getAsInt() : NO_DATA;
+        }
+
+        @Override
+        public void write(int address, int data) {
+            if (address == this.address)
+                writer.accept(data);
+        }
+
+    }
 
 }
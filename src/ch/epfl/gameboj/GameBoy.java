@@ -20,17 +20,28 @@ import java.util.Objects;
 public final class GameBoy {
 
     private final Bus bus;
+    private final Scheduler scheduler;
     private final Cpu cpu;
     private final Timer timer;
     private final LcdController lcdController;
 
-    private long simulatedCycles;
+    /**
+     * Creates a new GameBoy from the given cartridge
+     * @param cartridge the cartridge to read
+     * @param cpuOptions the execution options of the cpu
+     */
+    public GameBoy(Cartridge cartridge, Cpu.Option... cpuOptions) {
+        this(cartridge, cpuOptions, new LcdController.Option[0]);
+    }
 
     /**
      * Creates a new GameBoy from the given cartridge
      * @param cartridge the cartridge to read
+     * @param cpuOptions the execution options of the cpu
+     * @param lcdOptions the rendering options of the lcd controller
      */
-    public GameBoy(Cartridge cartridge) {
+    public GameBoy(Cartridge cartridge, Cpu.Option[] cpuOptions,
+            LcdController.Option... lcdOptions) {
         Objects.requireNonNull(cartridge);
 
         bus = new Bus();
@@ -50,7 +61,7 @@ public final class GameBoy {
         echoRamController.attachTo(bus);
 
         // Cpu
-        cpu = new Cpu();
+        cpu = new Cpu(cpuOptions);
         cpu.attachTo(bus);
 
         // BootRomController
@@ -62,8 +73,14 @@ public final class GameBoy {
         timer.attachTo(bus);
 
         // Lcd Controller
-        lcdController = new LcdController(cpu);
+        lcdController = new LcdController(cpu, lcdOptions);
         lcdController.attachTo(bus);
+
+        // Scheduler (components sharing a cycle run in this order)
+        scheduler = new Scheduler();
+        timer.attachTo(scheduler);
+        lcdController.attachTo(scheduler);
+        cpu.attachTo(scheduler);
     }
 
     /**
@@ -99,20 +116,14 @@ public final class GameBoy {
      * @param cycle the cycle limit
      */
     public void runUntil(long cycle) {
-        Preconditions.checkArgument(simulatedCycles <= cycle);
-        while (simulatedCycles < cycle) {
-            timer.cycle(simulatedCycles);
-            lcdController.cycle(simulatedCycles);
-            cpu.cycle(simulatedCycles);
-            simulatedCycles++;
-        }
+        scheduler.runUntil(cycle);
     }
 
     /**
      * @return the number of cycles already simulated
      */
     public long cycles() {
-        return simulatedCycles;
+        return scheduler.cycles();
     }
 
 }
@@ -1,5 +1,7 @@
 package ch.epfl.gameboj;
 
+import java.util.Objects;
+
 /**
  * Preconditions
  *
@@ -48,4 +50,22 @@ public interface Preconditions {
         }
     }
 
+    /**
+     * Checks if a block of values lies both within the 16-bit address space
+     * and within an array
+     * @param address the address of the first value of the block
+     * @param array the array holding the values of the block
+     * @param offset the index of the first value in {@code array}
+     * @param length the number of values of the block
+     * @throws IllegalArgumentException if {@code address} isn't 16-bit, or if
+     * the block exceeds the address space
+     * @throws NullPointerException if {@code array} is null
+     * @throws IndexOutOfBoundsException if the block exceeds {@code array}
+     */
+    static void checkBlock(int address, byte[] array, int offset, int length) {
+        checkBits16(address);
+        Objects.checkFromIndexSize(offset, length, array.length);
+        checkArgument(address + length <= 0x10000);
+    }
+
 }
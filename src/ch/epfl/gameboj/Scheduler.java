@@ -0,0 +1,162 @@
+package ch.epfl.gameboj;
+
+import ch.epfl.gameboj.component.Clocked;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Scheduler
+ *
+ * A class that simulates clocked components by jumping from one event to the
+ * next, instead of cycling every component on every cycle.
+ *
+ * Each attached component reports the next cycle at which it has work to do;
+ * this cycle is cached until the component runs again, or until it is
+ * rescheduled (for instance after a write to one of its timing registers).
+ * Components that have an event on the same cycle are cycled in attachment
+ * order, as if they were all cycled on every cycle.
+ *
+ * A component being cycled may also run ahead of the other components, as
+ * long as none of them has an event in between, see
+ * {@link #runAhead(Clocked, long)}.
+ *
+ * @author Ulysse Ramage (282300)
+ */
+public final class Scheduler {
+
+    /** Marks a cached event that must be asked again to its component */
+    private static final long STALE = Long.MIN_VALUE;
+
+    private Clocked[] components = new Clocked[0];
+    private long[] nextEvents = new long[0];
+
+    private long simulatedCycles;
+    private long currentCycle = -1;
+    private long runLimit;
+
+    /**
+     * Attaches a clocked component to the scheduler; components are cycled in
+     * attachment order when they have an event on the same cycle
+     * @param component the component to attach
+     * @throws NullPointerException if {@code component} is null
+     */
+    public void attach(Clocked component) {
+        Objects.requireNonNull(component);
+        components = Arrays.copyOf(components, components.length + 1);
+        components[components.length - 1] = component;
+        nextEvents = Arrays.copyOf(nextEvents, nextEvents.length + 1);
+        nextEvents[nextEvents.length - 1] = STALE;
+    }
+
+    /**
+     * Forgets the next event of a component, which will be asked again to the
+     * component before the scheduler gets past the current cycle. Must be
+     * called whenever the timing of the component changes from outside
+     * of its own {@link Clocked#cycle(long)}
+     * @param component the component to reschedule
+     */
+    public void reschedule(Clocked component) {
+        for (int i = 0; i < components.length; ++i) {
+            if (components[i] == component)
+                nextEvents[i] = STALE;
+        }
+    }
+
+    /**
+     * @return the cycle being simulated, or the last simulated cycle if the
+     * scheduler isn't running (-1 if no cycle has been simulated yet)
+     */
+    public long currentCycle() {
+        return currentCycle;
+    }
+
+    /**
+     * Lets the component being cycled run ahead of the others, up to the
+     * given cycle, which then becomes the current cycle. This is only
+     * possible if the other components have no event before, and if the
+     * cycle is before the limit of the current run
+     * @param component the component being cycled
+     * @param cycle the cycle the component wants to run at
+     * @return true if and only if the component may run at {@code cycle}
+     * @throws IllegalArgumentException if {@code component} isn't attached
+     */
+    public boolean runAhead(Clocked component, long cycle) {
+        int index = indexOf(component);
+        if (cycle >= runLimit)
+            return false;
+        for (int i = 0; i < components.length; ++i) {
+            if (i == index)
+                continue;
+            // Components attached before run first on a same cycle
+            boolean before = (i < index);
+            if (nextEvents[i] == STALE)
+                nextEvents[i] = nextEventCycle(i, before ? currentCycle + 1 : currentCycle);
+            if (before ? nextEvents[i] <= cycle : nextEvents[i] < cycle)
+                return false;
+        }
+        currentCycle = cycle;
+        return true;
+    }
+
+    /**
+     * @return the number of cycles already simulated
+     */
+    public long cycles() {
+        return simulatedCycles;
+    }
+
+    /**
+     * Runs the attached components until a given cycle is reached
+     * @param cycle the cycle limit (excluded)
+     * @throws IllegalArgumentException if {@code cycle} has already been
+     * reached
+     */
+    public void runUntil(long cycle) {
+        Preconditions.checkArgument(simulatedCycles <= cycle);
+        runLimit = cycle;
+        refreshStaleEvents(simulatedCycles);
+        while ((currentCycle = earliestEvent()) < cycle) {
+            for (int i = 0; i < components.length; ++i) {
+                if (nextEvents[i] == STALE)
+                    nextEvents[i] = nextEventCycle(i, currentCycle);
+                if (nextEvents[i] == currentCycle) {
+                    nextEvents[i] = STALE;
+                    // The component may run ahead, changing the current cycle
+                    components[i].cycle(currentCycle);
+                }
+            }
+            refreshStaleEvents(currentCycle + 1);
+        }
+        simulatedCycles = cycle;
+        currentCycle = cycle - 1;
+    }
+
+    private int indexOf(Clocked component) {
+        for (int i = 0; i < components.length; ++i) {
+            if (components[i] == component)
+                return i;
+        }
+        throw new IllegalArgumentException();
+    }
+
+    private long nextEventCycle(int index, long fromCycle) {
+        return Math.max(fromCycle, components[index].nextEventCycle(fromCycle));
+    }
+
+    private void refreshStaleEvents(long fromCycle) {
+        for (int i = 0; i < components.length; ++i) {
+            if (nextEvents[i] == STALE)
+                nextEvents[i] = nextEventCycle(i, fromCycle);
+        }
+    }
+
+    private long earliestEvent() {
+        long earliest = Long.MAX_VALUE;
+        for (long event : nextEvents) {
+            earliest = Math.min(earliest, event);
+        }
+        return earliest;
+    }
+
+}
@@ -102,6 +102,16 @@ public final class BitVector {
         return Bits.test(elements[index], remainder);
     }
 
+    /**
+     * Gets the 32 bits of the vector starting at the given multiple of 32
+     * @param index the index of the group of 32 bits
+     * @return the bits from index {@code 32 * index} to {@code 32 * index + 31}
+     * @throws IndexOutOfBoundsException if {@code index} is invalid
+     */
+    public int element(int index) {
+        return elements[Objects.checkIndex(index, intSize())];
+    }
+
     /**
      * Creates a new BitVector, the bitwise complement of the instance
      * @return the resulting BitVector
@@ -13,6 +13,14 @@ import java.util.Objects;
  */
 public final class Bits {
 
+    /** The value of each 8-bit value with its bits mirrored */
+    private static final int[] REVERSED_8 = new int[1 << 8];
+
+    static {
+        for (int b = 0; b < REVERSED_8.length; ++b)
+            REVERSED_8[b] = Integer.reverse(b) >>> (Integer.SIZE - 8);
+    }
+
     /** Private constructor to prevent instancing */
     private Bits() {}
 
@@ -144,11 +152,7 @@ public final class Bits {
      */
     public static int reverse8(int b) {
         Preconditions.checkBits8(b);
-        int result = 0;
-        for (int i = 0; i < 8; ++i) {
-            result = result | (extract(b, 8 - i - 1, 1) << i);
-        }
-        return result;
+        return REVERSED_8[b];
     }
 
     /**
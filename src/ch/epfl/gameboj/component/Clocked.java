@@ -1,5 +1,7 @@
 package ch.epfl.gameboj.component;
 
+import ch.epfl.gameboj.Scheduler;
+
 /**
  * Clocked
  *
@@ -15,4 +17,24 @@ public interface Clocked {
      */
     void cycle(long cycle);
 
+    /**
+     * Gives the first cycle, starting from the provided one, at which the
+     * component has something to do. By default, the component has to be
+     * cycled on every cycle
+     * @param cycle the first cycle to consider
+     * @return the cycle of the next event of the component, or
+     * {@code Long.MAX_VALUE} if it is idle until it gets rescheduled
+     */
+    default long nextEventCycle(long cycle) {
+        return cycle;
+    }
+
+    /**
+     * Attaches the component to the passed scheduler
+     * @param scheduler the scheduler to attach the component to
+     */
+    default void attachTo(Scheduler scheduler) {
+        scheduler.attach(this);
+    }
+
 }
@@ -1,6 +1,7 @@
 package ch.epfl.gameboj.component;
 
 import ch.epfl.gameboj.Bus;
+import ch.epfl.gameboj.Preconditions;
 
 /**
  * Component
@@ -31,8 +32,50 @@ public interface Component {
     void write(int address, int data);
 
     /**
-     * Attaches the component to the passed bus
+     * Reads a block of consecutive values of the component, leaving untouched
+     * those it has no data for. Reads them one at a time by default, which
+     * components backed by arrays should override with a bulk copy
+     * @param address the address of the first value
+     * @param dst the array to store the values in
+     * @param offset the index of the first value in {@code dst}
+     * @param length the number of values to read
+     * @throws IllegalArgumentException if the block isn't within the 16-bit
+     * address space
+     * @throws IndexOutOfBoundsException if the block exceeds {@code dst}
+     */
+    default void readBlock(int address, byte[] dst, int offset, int length) {
+        Preconditions.checkBlock(address, dst, offset, length);
+        for (int i = 0; i < length; ++i) {
+            int value = read(address + i);
+            if (value != NO_DATA)
+                dst[offset + i] = (byte) value;
+        }
+    }
+
+    /**
+     * Writes a block of consecutive values in the component. Writes them one
+     * at a time by default, which components backed by arrays should
+     * override with a bulk copy
+     * @param address the address of the first value
+     * @param src the array holding the values to write
+     * @param offset the index of the first value in {@code src}
+     * @param length the number of values to write
+     * @throws IllegalArgumentException if the block isn't within the 16-bit
+     * address space
+     * @throws IndexOutOfBoundsException if the block exceeds {@code src}
+     */
+    default void writeBlock(int address, byte[] src, int offset, int length) {
+        Preconditions.checkBlock(address, src, offset, length);
+        for (int i = 0; i < length; ++i)
+            write(address + i, Byte.toUnsignedInt(src[offset + i]));
+    }
+
+    /**
+     * Attaches the component to the passed bus, over the whole address space
+     * by default. Components that only own some address ranges should
+     * override it and attach to those ranges only
      * @param bus the bus to attach the component to
+     * @see Bus#attach(Component, int, int)
      */
     default void attachTo(Bus bus) {
         bus.attach(this);
@@ -1,7 +1,9 @@
 package ch.epfl.gameboj.component;
 
 import ch.epfl.gameboj.AddressMap;
+import ch.epfl.gameboj.Bus;
 import ch.epfl.gameboj.Preconditions;
+import ch.epfl.gameboj.Scheduler;
 import ch.epfl.gameboj.bits.Bits;
 import ch.epfl.gameboj.component.cpu.Cpu;
 
@@ -13,13 +15,21 @@ import java.util.Objects;
  * A class representing a Timer component that keeps track of
  * the elapsed time
  *
+ * The counter isn't incremented on every cycle: it is brought up to date
+ * whenever the timer is accessed or cycled, and the timer only asks to be
+ * cycled when TIMA overflows
+ *
  * @author Ulysse Ramage (282300)
  */
 public final class Timer implements Component, Clocked {
 
+    private static final int COUNTER_STEP = 4;
+
     private final Cpu cpu;
+    private Scheduler scheduler;
 
     private int counter, TIMA, TMA, TAC;
+    private long lastCycle = -1;
 
     /**
      * Creates a new Timer associated with a Cpu
@@ -38,10 +48,8 @@ public final class Timer implements Component, Clocked {
     public int read(int address) {
         Preconditions.checkBits16(address);
         switch (address) {
-            case AddressMap.REG_DIV: {
-                return Bits.extract(counter, 8, 8);
-            }
-            case AddressMap.REG_TIMA: return TIMA;
+            case AddressMap.REG_DIV: return readDIV();
+            case AddressMap.REG_TIMA: return readTIMA();
             case AddressMap.REG_TMA: return TMA;
             case AddressMap.REG_TAC: return TAC;
             default: return Component.NO_DATA;
@@ -55,15 +63,33 @@ public final class Timer implements Component, Clocked {
     public void write(int address, int data) {
         Preconditions.checkBits16(address);
         Preconditions.checkBits8(data);
-
-        boolean previousState = state();
         switch (address) {
-            case AddressMap.REG_DIV: counter = 0; break;
-            case AddressMap.REG_TIMA: TIMA = data; break;
-            case AddressMap.REG_TMA: TMA = data; break;
-            case AddressMap.REG_TAC: TAC = data; break;
+            case AddressMap.REG_DIV: writeDIV(data); break;
+            case AddressMap.REG_TIMA: writeTIMA(data); break;
+            case AddressMap.REG_TMA: writeTMA(data); break;
+            case AddressMap.REG_TAC: writeTAC(data); break;
         }
-        incIfChange(previousState);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Only attaches handlers to the timer registers
+     */
+    @Override
+    public void attachTo(Bus bus) {
+        bus.attachRegister(AddressMap.REG_DIV, this::readDIV, this::writeDIV);
+        bus.attachRegister(AddressMap.REG_TIMA, this::readTIMA, this::writeTIMA);
+        bus.attachRegister(AddressMap.REG_TMA, () -> TMA, this::writeTMA);
+        bus.attachRegister(AddressMap.REG_TAC, () -> TAC, this::writeTAC);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void attachTo(Scheduler scheduler) {
+        Clocked.super.attachTo(scheduler);
+        this.scheduler = scheduler;
     }
 
     /**
@@ -71,25 +97,123 @@ public final class Timer implements Component, Clocked {
      */
     @Override
     public void cycle(long cycle) {
-        boolean previousState = state();
-        counter = Bits.clip(16, counter + 4);
+        catchUp(cycle);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The timer only has something to do when TIMA overflows
+     */
+    @Override
+    public long nextEventCycle(long cycle) {
+        if (!isActive())
+            return Long.MAX_VALUE;
+        int period = statePeriod();
+        int overflowIncrements = 0x100 - TIMA;
+        long overflowCounter =
+                ((long) (counter / period + overflowIncrements)) * period;
+        return lastCycle + (overflowCounter - counter) / COUNTER_STEP;
+    }
+
+    private int readDIV() {
+        catchUp(currentCycle());
+        return Bits.extract(counter, 8, 8);
+    }
+
+    private int readTIMA() {
+        catchUp(currentCycle());
+        return TIMA;
+    }
+
+    private void writeDIV(int data) {
+        boolean previousState = beforeWrite();
+        counter = 0;
+        afterWrite(previousState);
+    }
+
+    private void writeTIMA(int data) {
+        boolean previousState = beforeWrite();
+        TIMA = data;
+        afterWrite(previousState);
+    }
+
+    private void writeTMA(int data) {
+        boolean previousState = beforeWrite();
+        TMA = data;
+        afterWrite(previousState);
+    }
+
+    private void writeTAC(int data) {
+        boolean previousState = beforeWrite();
+        TAC = data;
+        afterWrite(previousState);
+    }
+
+    /** Brings the timer up to date before a write, and gives its state */
+    private boolean beforeWrite() {
+        catchUp(currentCycle());
+        return state();
+    }
+
+    /** Increments TIMA if a write changed the state, and reschedules */
+    private void afterWrite(boolean previousState) {
         incIfChange(previousState);
+        if (scheduler != null)
+            scheduler.reschedule(this);
+    }
+
+    /** @return the cycle up to which the timer must be brought up to date */
+    private long currentCycle() {
+        return (scheduler != null) ? scheduler.currentCycle() : lastCycle;
+    }
+
+    /**
+     * Brings the counter and TIMA up to date, as if the timer had been
+     * cycled on every cycle up to the given one (included)
+     */
+    private void catchUp(long cycle) {
+        if (cycle <= lastCycle)
+            return;
+        long newCounter = counter + (cycle - lastCycle) * COUNTER_STEP;
+        lastCycle = cycle;
+        if (isActive()) {
+            // One increment each time the state goes from true to false
+            int period = statePeriod();
+            incTima(newCounter / period - counter / period);
+        }
+        counter = (int) (newCounter & 0xFFFF);
+    }
+
+    private boolean isActive() {
+        return Bits.test(TAC, 2);
+    }
+
+    /** @return the number of counter values for the state bit to loop */
+    private int statePeriod() {
+        return 2 << getTACIndex();
     }
 
     private boolean state() {
-        boolean active = Bits.test(TAC, 2);
         boolean condition = Bits.test(counter, getTACIndex());
-        return active && condition;
+        return isActive() && condition;
     }
 
     private void incIfChange(boolean previousState) {
         if (previousState && !state()) {
-            if (TIMA == 0xFF) {
-                cpu.requestInterrupt(Cpu.Interrupt.TIMER);
-                TIMA = TMA;
-            } else {
-                TIMA++;
+            incTima(1);
+        }
+    }
+
+    private void incTima(long increments) {
+        while (increments > 0) {
+            int overflowIncrements = 0x100 - TIMA;
+            if (increments < overflowIncrements) {
+                TIMA += increments;
+                return;
             }
+            increments -= overflowIncrements;
+            cpu.requestInterrupt(Cpu.Interrupt.TIMER);
+            TIMA = TMA;
         }
     }
 
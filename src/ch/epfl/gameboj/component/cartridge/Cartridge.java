@@ -1,13 +1,16 @@
 package ch.epfl.gameboj.component.cartridge;
 
+import ch.epfl.gameboj.Bus;
 import ch.epfl.gameboj.Preconditions;
 import ch.epfl.gameboj.component.Component;
+import ch.epfl.gameboj.component.memory.Ram;
 import ch.epfl.gameboj.component.memory.Rom;
+import ch.epfl.gameboj.component.memory.RomRegistry;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.Objects;
+import java.util.function.Consumer;
 
 /**
  * Cartridge
@@ -19,33 +22,102 @@ import java.io.InputStream;
 public final class Cartridge implements Component {
 
     private final Component mbc;
+    private final Consumer<Bus> ramAttacher;
 
     private static final int TYPE_ADDRESS = 0x147;
+    private static final int RAM_SIZE_ADDRESS = 0x149;
+    private static final String SAVE_EXTENSION = ".sav";
+    private static final int[] RAM_SIZES = { 0, 0x800, 0x2000, 0x8000, 0x20000, 0x10000 };
 
     /**
      * Creates a new Cartridge associated with the given Memory Bank Controller
      * @param mbc the associated MBC
+     * @param ramAttacher the function attaching the ram of the MBC only
      */
-    private Cartridge(Component mbc) {
+    private Cartridge(Component mbc, Consumer<Bus> ramAttacher) {
         this.mbc = mbc;
+        this.ramAttacher = ramAttacher;
     }
 
     /**
-     * Creates a new Cartridge from a given .rom file
+     * Creates a new Cartridge from a given .rom file, which is mapped in
+     * memory rather than read, and shared with the other cartridges of the
+     * same game through the shared registry
      * @param romFile a .rom file
      * @return a Cartridge whose contents are those of the .rom
      * @throws IllegalArgumentException if the .rom is invalid (cartridge type
-     * is different than 0)
+     * isn't supported, or invalid ram size)
      * @throws IOException if an in/out error occurs internally
+     * @see RomRegistry#shared()
      */
     public static Cartridge ofFile(File romFile) throws IOException {
-        byte[] data;
-        try (InputStream stream = new FileInputStream(romFile)) {
-            data = stream.readAllBytes();
+        return ofFile(romFile, RomRegistry.shared());
+    }
+
+    /**
+     * Creates a new Cartridge from a given .rom file, whose rom is interned
+     * in the given registry. The ram of a cartridge with a battery is mapped
+     * to the .sav file next to the .rom file, which is created if needed
+     * @param romFile a .rom file
+     * @param registry the registry to intern the rom in
+     * @return a Cartridge whose contents are those of the .rom
+     * @throws IllegalArgumentException if the .rom is invalid (cartridge type
+     * isn't supported, or invalid ram size)
+     * @throws NullPointerException if {@code registry} is null
+     * @throws IOException if an in/out error occurs internally
+     */
+    public static Cartridge ofFile(File romFile, RomRegistry registry) throws IOException {
+        Objects.requireNonNull(registry);
+        Rom rom = registry.intern(Rom.ofFile(romFile));
+        switch (rom.read(TYPE_ADDRESS)) {
+            case 0x00: return new Cartridge(new MBC0(rom), bus -> {});
+            case 0x01: case 0x02:
+                return ofMBC1(new MBC1(rom, ramSize(rom)));
+            case 0x03:
+                return ofMBC1(new MBC1(rom, batteryRam(romFile, rom)));
+            case 0x19: case 0x1A: case 0x1C: case 0x1D:
+                return ofMBC5(new MBC5(rom, ramSize(rom)));
+            case 0x1B: case 0x1E:
+                return ofMBC5(new MBC5(rom, batteryRam(romFile, rom)));
+            default: throw new IllegalArgumentException();
         }
-        Preconditions.checkArgument(data[TYPE_ADDRESS] == 0);
-        Cartridge cartridge = new Cartridge(new MBC0(new Rom(data)));
-        return cartridge;
+    }
+
+    private static Cartridge ofMBC1(MBC1 mbc) {
+        return new Cartridge(mbc, mbc::attachRamTo);
+    }
+
+    private static Cartridge ofMBC5(MBC5 mbc) {
+        return new Cartridge(mbc, mbc::attachRamTo);
+    }
+
+    /**
+     * @return the memory bank controller of the cartridge
+     */
+    public Component controller() {
+        return mbc;
+    }
+
+    private static int ramSize(Rom rom) {
+        int ramSizeCode = rom.read(RAM_SIZE_ADDRESS);
+        Preconditions.checkArgument(ramSizeCode < RAM_SIZES.length);
+        return RAM_SIZES[ramSizeCode];
+    }
+
+    /**
+     * @return the ram of a cartridge with a battery, mapped to the save file
+     * next to the rom file (with the extension .sav), if it has a ram
+     */
+    private static Ram batteryRam(File romFile, Rom rom) throws IOException {
+        int ramSize = ramSize(rom);
+        if (ramSize == 0)
+            return new Ram(0);
+        String name = romFile.getName();
+        int extension = name.lastIndexOf('.');
+        if (extension > 0)
+            name = name.substring(0, extension);
+        return Ram.ofFile(new File(romFile.getAbsoluteFile().getParentFile(),
+                name + SAVE_EXTENSION), ramSize);
     }
 
     /**
@@ -67,4 +139,41 @@ public final class Cartridge implements Component {
         mbc.write(address, data);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readBlock(int address, byte[] dst, int offset, int length) {
+        Preconditions.checkBlock(address, dst, offset, length);
+        mbc.readBlock(address, dst, offset, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeBlock(int address, byte[] src, int offset, int length) {
+        Preconditions.checkBlock(address, src, offset, length);
+        mbc.writeBlock(address, src, offset, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Attaches the memory bank controller, over the cartridge rom and ram
+     */
+    @Override
+    public void attachTo(Bus bus) {
+        mbc.attachTo(bus);
+    }
+
+    /**
+     * Only attaches the ram of the cartridge, if any, for its rom to be
+     * attached through a component giving access to it, such as a boot rom
+     * controller
+     * @param bus the bus to attach the ram to
+     */
+    public void attachRamTo(Bus bus) {
+        ramAttacher.accept(bus);
+    }
+
 }
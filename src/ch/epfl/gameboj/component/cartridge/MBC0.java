@@ -42,8 +42,24 @@ public final class MBC0 implements Component {
         return Component.NO_DATA;
     }
 
+    /**
+     * {@inheritDoc}
+     * Copies the part of the block within the rom at once
+     */
+    @Override
+    public void readBlock(int address, byte[] dst, int offset, int length) {
+        Preconditions.checkBlock(address, dst, offset, length);
+        int end = Math.min(address + length, rom.size());
+        if (address < end)
+            rom.readBlock(address, dst, offset, end - address);
+    }
+
     /** Does not do anything, as writing to a Rom is not supported */
     @Override
     public void write(int address, int data) {}
 
+    /** Does not do anything, as writing to a Rom is not supported */
+    @Override
+    public void writeBlock(int address, byte[] src, int offset, int length) {}
+
 }
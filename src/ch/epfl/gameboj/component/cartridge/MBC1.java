@@ -0,0 +1,181 @@
+package ch.epfl.gameboj.component.cartridge;
+
+import ch.epfl.gameboj.AddressMap;
+import ch.epfl.gameboj.Bus;
+import ch.epfl.gameboj.Preconditions;
+import ch.epfl.gameboj.bits.Bits;
+import ch.epfl.gameboj.component.Component;
+import ch.epfl.gameboj.component.memory.Ram;
+import ch.epfl.gameboj.component.memory.Rom;
+
+import java.util.Objects;
+
+/**
+ * MBC1
+ *
+ * A class representing an MBC1 rom controller, which switches banks of its
+ * rom and of its (optional) ram.
+ *
+ * Each region of the address space is mapped to its current bank by an
+ * offset, only recomputed when a bank is switched, so that an access to a
+ * bank is a single addition away from an access to the rom or the ram
+ *
+ * @author Ulysse Ramage (282300)
+ */
+public final class MBC1 implements Component {
+
+    private static final int ROM_BANK_SIZE = 0x4000;
+    private static final int RAM_BANK_SIZE = 0x2000;
+    private static final int RAM_ENABLE = 0xA;
+
+    private final Rom rom;
+    private final Ram ram;
+    private final int romBankMask, ramBankMask;
+    private Bus bus;
+
+    /** Registers */
+    private boolean ramEnabled, mode1;
+    private int bank1 = 1, bank2 = 0;
+
+    /** Offsets from the addresses of each region to the indices of its bank */
+    private int lowRomOffset, highRomOffset, ramOffset;
+
+    /**
+     * Creates a new controller of type 1 for the given Rom, with a new ram of
+     * the given size
+     * @param rom the Rom to control
+     * @param ramSize the size of the ram (0 if there is none)
+     * @throws IllegalArgumentException if {@code ramSize} is negative
+     * @see #MBC1(Rom, Ram)
+     */
+    public MBC1(Rom rom, int ramSize) {
+        this(rom, new Ram(ramSize));
+    }
+
+    /**
+     * Creates a new controller of type 1 for the given Rom and Ram
+     * @param rom the Rom to control
+     * @param ram the Ram to control (of size 0 if there is none)
+     * @throws NullPointerException if {@code rom} or {@code ram} is null
+     * @throws IllegalArgumentException if the size of {@code rom} isn't a
+     * power of two between {@code 0x8000} and {@code 0x200000}, or if the
+     * size of {@code ram} isn't 0, {@code 0x800}, {@code 0x2000} or
+     * {@code 0x8000}
+     */
+    public MBC1(Rom rom, Ram ram) {
+        Objects.requireNonNull(rom);
+        Objects.requireNonNull(ram);
+        int ramSize = ram.size();
+        Preconditions.checkArgument(Integer.bitCount(rom.size()) == 1
+                && 0x8000 <= rom.size() && rom.size() <= 0x200000);
+        Preconditions.checkArgument(ramSize == 0 || ramSize == 0x800
+                || ramSize == 0x2000 || ramSize == 0x8000);
+        this.rom = rom;
+        this.ram = ram;
+        this.romBankMask = rom.size() / ROM_BANK_SIZE - 1;
+        this.ramBankMask = Math.max(ramSize / RAM_BANK_SIZE, 1) - 1;
+        updateOffsets();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(int address) {
+        Preconditions.checkBits16(address);
+        if (address < ROM_BANK_SIZE)
+            return rom.read(address + lowRomOffset);
+        if (address < AddressMap.CARTRIDGE_ROM_END)
+            return rom.read(address + highRomOffset);
+        if (isWithinRamBounds(address) && ramEnabled) {
+            int index = address + ramOffset;
+            return (index < ram.size()) ? ram.read(index) : Component.NO_DATA;
+        }
+        return Component.NO_DATA;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Writes to the rom set the registers of the controller
+     */
+    @Override
+    public void write(int address, int data) {
+        Preconditions.checkBits16(address);
+        Preconditions.checkBits8(data);
+        switch (address >> 13) {
+            case 0: {
+                boolean enabled = Bits.clip(4, data) == RAM_ENABLE;
+                if (enabled != ramEnabled) {
+                    ramEnabled = enabled;
+                    markModified(AddressMap.CARTRIDGE_RAM_START, AddressMap.CARTRIDGE_RAM_END);
+                }
+            } return;
+            case 1: bank1 = Math.max(Bits.clip(5, data), 1); break;
+            case 2: bank2 = Bits.clip(2, data); break;
+            case 3: mode1 = Bits.test(data, 0); break;
+            case 5: {
+                int index = address + ramOffset;
+                if (ramEnabled && index < ram.size())
+                    ram.write(index, data);
+            } return;
+            default: return;
+        }
+        updateOffsets();
+    }
+
+    /**
+     * {@inheritDoc}
+     * Attaches to the cartridge rom and ram, and notifies the bus when banks
+     * are switched
+     */
+    @Override
+    public void attachTo(Bus bus) {
+        bus.attach(this, AddressMap.CARTRIDGE_ROM_START, AddressMap.CARTRIDGE_ROM_END);
+        attachRamTo(bus);
+    }
+
+    /**
+     * Only attaches to the cartridge ram, for the rom to be attached through
+     * a boot rom controller, and notifies the bus when banks are switched
+     * @param bus the bus to attach the ram to
+     */
+    void attachRamTo(Bus bus) {
+        bus.attach(this, AddressMap.CARTRIDGE_RAM_START, AddressMap.CARTRIDGE_RAM_END);
+        this.bus = bus;
+    }
+
+    private boolean isWithinRamBounds(int address) {
+        return (AddressMap.CARTRIDGE_RAM_START <= address
+                && address < AddressMap.CARTRIDGE_RAM_END);
+    }
+
+    /**
+     * Maps each region to its current bank, marking the regions whose bank
+     * changed as modified
+     */
+    private void updateOffsets() {
+        int lowRomBank = (mode1 ? bank2 << 5 : 0) & romBankMask;
+        int highRomBank = (bank2 << 5 | bank1) & romBankMask;
+        int ramBank = (mode1 ? bank2 : 0) & ramBankMask;
+
+        int newLowRomOffset = lowRomBank * ROM_BANK_SIZE;
+        int newHighRomOffset = (highRomBank - 1) * ROM_BANK_SIZE;
+        int newRamOffset = ramBank * RAM_BANK_SIZE - AddressMap.CARTRIDGE_RAM_START;
+
+        if (newLowRomOffset != lowRomOffset)
+            markModified(AddressMap.CARTRIDGE_ROM_START, ROM_BANK_SIZE);
+        if (newHighRomOffset != highRomOffset)
+            markModified(ROM_BANK_SIZE, AddressMap.CARTRIDGE_ROM_END);
+        if (newRamOffset != ramOffset)
+            markModified(AddressMap.CARTRIDGE_RAM_START, AddressMap.CARTRIDGE_RAM_END);
+        lowRomOffset = newLowRomOffset;
+        highRomOffset = newHighRomOffset;
+        ramOffset = newRamOffset;
+    }
+
+    private void markModified(int startAddress, int endAddress) {
+        if (bus != null)
+            bus.markModified(startAddress, endAddress);
+    }
+
+}
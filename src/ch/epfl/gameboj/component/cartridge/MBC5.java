@@ -0,0 +1,205 @@
+package ch.epfl.gameboj.component.cartridge;
+
+import ch.epfl.gameboj.AddressMap;
+import ch.epfl.gameboj.Bus;
+import ch.epfl.gameboj.Preconditions;
+import ch.epfl.gameboj.bits.Bits;
+import ch.epfl.gameboj.component.Component;
+import ch.epfl.gameboj.component.memory.Ram;
+import ch.epfl.gameboj.component.memory.Rom;
+
+import java.util.Objects;
+
+/**
+ * MBC5
+ *
+ * A class representing an MBC5 rom controller, for roms of up to 512 banks
+ * selected through a 9-bit register, and rams of up to 16 banks.
+ *
+ * The switchable rom region is mapped to its current bank by an offset into
+ * the rom, only recomputed when a bank is switched, so that a bank switch
+ * never copies data. When the rom is a mapped file, the pages of a bank are
+ * only read from disk once it gets accessed, unless the rom was compared
+ * with a registered one of the same header when interned, and they are
+ * evicted by the system like any other page of the file. The number of
+ * distinct banks switched to tells how much of the rom a game really uses
+ *
+ * @author Ulysse Ramage (282300)
+ */
+public final class MBC5 implements Component {
+
+    private static final int ROM_BANK_SIZE = 0x4000;
+    private static final int RAM_BANK_SIZE = 0x2000;
+    private static final int RAM_ENABLE = 0xA;
+
+    private final Rom rom;
+    private final Ram ram;
+    private final int romBankMask, ramBankMask;
+    private Bus bus;
+
+    /** Rom banks switched to at least once */
+    private final boolean[] loadedBanks;
+    private long bankLoads;
+
+    /** Registers */
+    private boolean ramEnabled;
+    private int romBank = 1, ramBank = 0;
+
+    /** Offsets from the addresses of each region to the indices of its bank */
+    private int highRomOffset, ramOffset;
+
+    /**
+     * Creates a new controller of type 5 for the given Rom, with a new ram of
+     * the given size
+     * @param rom the Rom to control
+     * @param ramSize the size of the ram (0 if there is none)
+     * @throws IllegalArgumentException if {@code ramSize} is negative
+     * @see #MBC5(Rom, Ram)
+     */
+    public MBC5(Rom rom, int ramSize) {
+        this(rom, new Ram(ramSize));
+    }
+
+    /**
+     * Creates a new controller of type 5 for the given Rom and Ram
+     * @param rom the Rom to control
+     * @param ram the Ram to control (of size 0 if there is none)
+     * @throws NullPointerException if {@code rom} or {@code ram} is null
+     * @throws IllegalArgumentException if the size of {@code rom} isn't a
+     * power of two between {@code 0x8000} and {@code 0x800000}, if the size
+     * of {@code ram} isn't 0, {@code 0x800} or a power of two multiple of
+     * {@code 0x2000} up to {@code 0x20000}
+     */
+    public MBC5(Rom rom, Ram ram) {
+        Objects.requireNonNull(rom);
+        Objects.requireNonNull(ram);
+        int ramSize = ram.size();
+        Preconditions.checkArgument(Integer.bitCount(rom.size()) == 1
+                && 0x8000 <= rom.size() && rom.size() <= 0x800000);
+        Preconditions.checkArgument(ramSize == 0 || ramSize == 0x800
+                || (Integer.bitCount(ramSize) == 1
+                    && RAM_BANK_SIZE <= ramSize && ramSize <= 0x20000));
+        this.rom = rom;
+        this.ram = ram;
+        this.romBankMask = rom.size() / ROM_BANK_SIZE - 1;
+        this.ramBankMask = Math.max(ramSize / RAM_BANK_SIZE, 1) - 1;
+        this.loadedBanks = new boolean[romBankMask + 1];
+        this.highRomOffset = bankOffset(romBank);
+        this.ramOffset = -AddressMap.CARTRIDGE_RAM_START;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(int address) {
+        Preconditions.checkBits16(address);
+        if (address < ROM_BANK_SIZE)
+            return rom.read(address);
+        if (address < AddressMap.CARTRIDGE_ROM_END)
+            return rom.read(address + highRomOffset);
+        if (isWithinRamBounds(address) && ramEnabled) {
+            int index = address + ramOffset;
+            return (index < ram.size()) ? ram.read(index) : Component.NO_DATA;
+        }
+        return Component.NO_DATA;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Writes to the rom set the registers of the controller
+     */
+    @Override
+    public void write(int address, int data) {
+        Preconditions.checkBits16(address);
+        Preconditions.checkBits8(data);
+        switch (address >> 12) {
+            case 0x0: case 0x1: {
+                boolean enabled = Bits.clip(4, data) == RAM_ENABLE;
+                if (enabled != ramEnabled) {
+                    ramEnabled = enabled;
+                    markModified(AddressMap.CARTRIDGE_RAM_START, AddressMap.CARTRIDGE_RAM_END);
+                }
+            } break;
+            case 0x2: switchRomBank(romBank & ~0xFF | data); break;
+            case 0x3: switchRomBank(Bits.set(romBank, 8, Bits.test(data, 0))); break;
+            case 0x4: case 0x5: {
+                ramBank = Bits.clip(4, data);
+                int newRamOffset = (ramBank & ramBankMask) * RAM_BANK_SIZE
+                        - AddressMap.CARTRIDGE_RAM_START;
+                if (newRamOffset != ramOffset) {
+                    ramOffset = newRamOffset;
+                    markModified(AddressMap.CARTRIDGE_RAM_START, AddressMap.CARTRIDGE_RAM_END);
+                }
+            } break;
+            case 0xA: case 0xB: {
+                int index = address + ramOffset;
+                if (ramEnabled && index < ram.size())
+                    ram.write(index, data);
+            } break;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Attaches to the cartridge rom and ram, and notifies the bus when banks
+     * are switched
+     */
+    @Override
+    public void attachTo(Bus bus) {
+        bus.attach(this, AddressMap.CARTRIDGE_ROM_START, AddressMap.CARTRIDGE_ROM_END);
+        attachRamTo(bus);
+    }
+
+    /**
+     * Only attaches to the cartridge ram, for the rom to be attached through
+     * a boot rom controller, and notifies the bus when banks are switched
+     * @param bus the bus to attach the ram to
+     */
+    void attachRamTo(Bus bus) {
+        bus.attach(this, AddressMap.CARTRIDGE_RAM_START, AddressMap.CARTRIDGE_RAM_END);
+        this.bus = bus;
+    }
+
+    /**
+     * @return the number of distinct rom banks switched to so far, counting
+     * the one selected at first
+     */
+    public long bankLoads() {
+        return bankLoads;
+    }
+
+    private boolean isWithinRamBounds(int address) {
+        return (AddressMap.CARTRIDGE_RAM_START <= address
+                && address < AddressMap.CARTRIDGE_RAM_END);
+    }
+
+    private void switchRomBank(int bank) {
+        romBank = bank;
+        int newHighRomOffset = bankOffset(romBank);
+        if (newHighRomOffset != highRomOffset) {
+            highRomOffset = newHighRomOffset;
+            markModified(ROM_BANK_SIZE, AddressMap.CARTRIDGE_ROM_END);
+        }
+    }
+
+    /**
+     * @return the offset from the addresses of the switchable rom region to
+     * the indices of the given bank, counted as loaded if it is switched to
+     * for the first time
+     */
+    private int bankOffset(int bank) {
+        int index = bank & romBankMask;
+        if (!loadedBanks[index]) {
+            loadedBanks[index] = true;
+            bankLoads++;
+        }
+        return index * ROM_BANK_SIZE - ROM_BANK_SIZE;
+    }
+
+    private void markModified(int startAddress, int endAddress) {
+        if (bus != null)
+            bus.markModified(startAddress, endAddress);
+    }
+
+}
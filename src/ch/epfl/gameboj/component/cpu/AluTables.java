@@ -0,0 +1,114 @@
+package ch.epfl.gameboj.component.cpu;
+
+/**
+ * AluTables
+ *
+ * Precomputed results of the 8-bit arithmetic, shift and rotation
+ * operations of {@link Alu}, which they return with a single array access.
+ * Arguments aren't validated: they must be 8-bit values
+ *
+ * @author Ulysse Ramage (282300)
+ */
+final class AluTables {
+
+    /** Indexed by (initial carry, l, r) */
+    private static final int[] ADD = new int[2 << 16];
+    private static final int[] SUB = new int[2 << 16];
+
+    /** Indexed by (n, h, c, v) */
+    private static final int[] BCD_ADJUST = new int[8 << 8];
+
+    /** Indexed by (direction, v) and (direction, carry, v) */
+    private static final int[] ROTATE = new int[2 << 8];
+    private static final int[] ROTATE_CARRY = new int[4 << 8];
+
+    /** Indexed by v */
+    private static final int[] SHIFT_LEFT = new int[1 << 8];
+    private static final int[] SHIFT_RIGHT_A = new int[1 << 8];
+    private static final int[] SHIFT_RIGHT_L = new int[1 << 8];
+    private static final int[] SWAP = new int[1 << 8];
+
+    static {
+        for (int c = 0; c < 2; ++c) {
+            for (int l = 0; l <= 0xFF; ++l) {
+                for (int r = 0; r <= 0xFF; ++r) {
+                    ADD[index(c, l, r)] = Alu.add(l, r, c == 1);
+                    SUB[index(c, l, r)] = Alu.sub(l, r, c == 1);
+                }
+            }
+        }
+        for (int v = 0; v <= 0xFF; ++v) {
+            for (int nhc = 0; nhc < 8; ++nhc) {
+                BCD_ADJUST[nhc << 8 | v] = Alu.bcdAdjust(v,
+                        (nhc & 0b100) != 0, (nhc & 0b010) != 0, (nhc & 0b001) != 0);
+            }
+            for (Alu.RotDir d : Alu.RotDir.values()) {
+                ROTATE[d.ordinal() << 8 | v] = Alu.rotate(d, v);
+                ROTATE_CARRY[index(d, false, v)] = Alu.rotate(d, v, false);
+                ROTATE_CARRY[index(d, true, v)] = Alu.rotate(d, v, true);
+            }
+            SHIFT_LEFT[v] = Alu.shiftLeft(v);
+            SHIFT_RIGHT_A[v] = Alu.shiftRightA(v);
+            SHIFT_RIGHT_L[v] = Alu.shiftRightL(v);
+            SWAP[v] = Alu.swap(v);
+        }
+    }
+
+    /** Private constructor to prevent instancing */
+    private AluTables() {}
+
+    /** @see Alu#add(int, int, boolean) */
+    static int add(int l, int r, boolean c0) {
+        return ADD[index(c0 ? 1 : 0, l, r)];
+    }
+
+    /** @see Alu#sub(int, int, boolean) */
+    static int sub(int l, int r, boolean b0) {
+        return SUB[index(b0 ? 1 : 0, l, r)];
+    }
+
+    /** @see Alu#bcdAdjust(int, boolean, boolean, boolean) */
+    static int bcdAdjust(int v, boolean n, boolean h, boolean c) {
+        int nhc = (n ? 0b100 : 0) | (h ? 0b010 : 0) | (c ? 0b001 : 0);
+        return BCD_ADJUST[nhc << 8 | v];
+    }
+
+    /** @see Alu#rotate(Alu.RotDir, int) */
+    static int rotate(Alu.RotDir d, int v) {
+        return ROTATE[d.ordinal() << 8 | v];
+    }
+
+    /** @see Alu#rotate(Alu.RotDir, int, boolean) */
+    static int rotate(Alu.RotDir d, int v, boolean c) {
+        return ROTATE_CARRY[index(d, c, v)];
+    }
+
+    /** @see Alu#shiftLeft(int) */
+    static int shiftLeft(int v) {
+        return SHIFT_LEFT[v];
+    }
+
+    /** @see Alu#shiftRightA(int) */
+    static int shiftRightA(int v) {
+        return SHIFT_RIGHT_A[v];
+    }
+
+    /** @see Alu#shiftRightL(int) */
+    static int shiftRightL(int v) {
+        return SHIFT_RIGHT_L[v];
+    }
+
+    /** @see Alu#swap(int) */
+    static int swap(int v) {
+        return SWAP[v];
+    }
+
+    private static int index(int c, int l, int r) {
+        return c << 16 | l << 8 | r;
+    }
+
+    private static int index(Alu.RotDir d, boolean c, int v) {
+        return d.ordinal() << 9 | (c ? 1 : 0) << 8 | v;
+    }
+
+}
@@ -0,0 +1,928 @@
+package ch.epfl.gameboj.component.cpu;
+
+import ch.epfl.gameboj.AddressMap;
+import ch.epfl.gameboj.bits.Bits;
+import ch.epfl.gameboj.component.cpu.Cpu.CompiledBlock;
+import ch.epfl.gameboj.component.cpu.Cpu.FlagSrc;
+import ch.epfl.gameboj.component.cpu.Cpu.Instruction;
+import ch.epfl.gameboj.component.cpu.Cpu.Reg;
+import ch.epfl.gameboj.component.cpu.Cpu.Reg16;
+
+import java.lang.invoke.MethodHandles;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * BlockCompiler
+ *
+ * Translates a block of the Cpu into the bytecode of a hidden class, defined
+ * as a nestmate of the Cpu so that it can access its registers. The
+ * registers are loaded into local variables once, and only stored back when
+ * the block stops, or before an instruction that isn't translated and goes
+ * through {@code Cpu.execute} instead. Flags are combined with constant
+ * masks, and the cycles of each instruction are added as constants. Between
+ * two instructions, {@code Cpu.continueBlock} tells whether the block can go
+ * on, exactly as the interpreter would.
+ *
+ * The members of the Cpu are named in the generated code, which the compiler
+ * can't check: a renamed member only fails when a block using it runs, see
+ * CpuTest.compiledBlocksReachEveryCpuMember
+ *
+ * @author Ulysse Ramage (282300)
+ */
+final class BlockCompiler {
+
+    private static final String CPU = "ch/epfl/gameboj/component/cpu/Cpu";
+    private static final String BLOCK = CPU + "$Block";
+    private static final String INSTRUCTION = CPU + "$Instruction";
+    private static final String REG16 = CPU + "$Reg16";
+    private static final String ALU = "ch/epfl/gameboj/component/cpu/Alu";
+    private static final String ALU_TABLES = "ch/epfl/gameboj/component/cpu/AluTables";
+    private static final String ROT_DIR = ALU + "$RotDir";
+
+    private static final Set<Opcode.Family> INTERPRETED_FAMILIES = EnumSet.of(
+            Opcode.Family.EDI, Opcode.Family.RETI,
+            Opcode.Family.HALT, Opcode.Family.STOP
+    );
+    private static final int MAX_STACK = 10;
+
+    /** Arguments of the generated method */
+    private static final int CPU_ARG = 1, BLOCK_ARG = 2;
+
+    private final ClassAssembler.Code code;
+    private final boolean aluTables;
+    private final ClassAssembler.Label exit = new ClassAssembler.Label();
+
+    /** Local variables: registers indexed by Reg, then the others */
+    private final int[] regs = new int[Reg.values().length];
+    private final int sp, pc, jumped, cycle, address, result;
+
+    private BlockCompiler(ClassAssembler.Code code, boolean aluTables) {
+        this.code = code;
+        this.aluTables = aluTables;
+        for (Reg r : Reg.values())
+            regs[r.ordinal()] = code.newLocal(1);
+        sp = code.newLocal(1);
+        pc = code.newLocal(1);
+        jumped = code.newLocal(1);
+        cycle = code.newLocal(2);
+        address = code.newLocal(1);
+        result = code.newLocal(1);
+        code.maxStack(MAX_STACK);
+    }
+
+    /**
+     * Compiles a block into a new hidden class
+     * @param instructions the instructions of the block
+     * @param aluTables whether Alu operations are looked up in tables
+     * @param cpuLookup a lookup from within the Cpu, whose nest the hidden
+     * class joins
+     * @return the compiled code of the block
+     */
+    static CompiledBlock compile(Instruction[] instructions, boolean aluTables,
+            MethodHandles.Lookup cpuLookup) {
+        ClassAssembler assembler = new ClassAssembler(CPU + "$CompiledBlock$Code",
+                "java/lang/Object", CPU + "$CompiledBlock");
+        ClassAssembler.Code constructor = assembler.method(ClassAssembler.ACC_PUBLIC,
+                "<init>", "()V", 1);
+        constructor.local(ClassAssembler.ALOAD, 0);
+        constructor.invoke(ClassAssembler.INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+        constructor.op(ClassAssembler.RETURN);
+        constructor.maxStack(1);
+
+        ClassAssembler.Code run = assembler.method(ClassAssembler.ACC_PUBLIC, "run",
+                "(L" + CPU + ";L" + BLOCK + ";)Z", 3);
+        new BlockCompiler(run, aluTables).emitBlock(instructions);
+
+        try {
+            MethodHandles.Lookup lookup = cpuLookup.defineHiddenClass(
+                    assembler.toByteArray(), true, MethodHandles.Lookup.ClassOption.NESTMATE);
+            return (CompiledBlock) lookup.lookupClass().getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            // The generated class is a nestmate of the Cpu, with a public constructor
+            throw new AssertionError(e);
+        }
+    }
+
+    private void emitBlock(Instruction[] instructions) {
+        code.pushInt(0);
+        store(jumped);
+        reload();
+        for (int i = 0; i < instructions.length; ++i) {
+            Instruction in = instructions[i];
+            boolean last = (i == instructions.length - 1);
+            if (INTERPRETED_FAMILIES.contains(in.family)) {
+                emitInterpreted(i, last);
+                if (last) break;
+            } else {
+                boolean fallsThrough = emitTranslated(in);
+                if (last) {
+                    if (fallsThrough) {
+                        code.pushInt(in.nextPC);
+                        store(pc);
+                    }
+                    break;
+                }
+            }
+            ClassAssembler.Label next = new ClassAssembler.Label();
+            loadArgs();
+            code.local(ClassAssembler.LLOAD, cycle);
+            code.invoke(ClassAssembler.INVOKEVIRTUAL, CPU, "continueBlock",
+                    "(L" + BLOCK + ";J)Z");
+            code.jump(ClassAssembler.IFNE, next);
+            code.pushInt(in.nextPC);
+            store(pc);
+            code.jump(ClassAssembler.GOTO, exit);
+            code.mark(next);
+        }
+        code.mark(exit);
+        spill();
+        code.local(ClassAssembler.ALOAD, CPU_ARG);
+        load(pc);
+        code.field(ClassAssembler.PUTFIELD, CPU, "PC", "I");
+        load(jumped);
+        code.op(ClassAssembler.IRETURN);
+    }
+
+    /**
+     * Runs an instruction through the interpreter, with the registers
+     * stored back before and loaded again after
+     */
+    private void emitInterpreted(int index, boolean last) {
+        spill();
+        loadArgs();
+        code.field(ClassAssembler.GETFIELD, BLOCK, "instructions", "[L" + INSTRUCTION + ";");
+        code.pushInt(index);
+        code.op(ClassAssembler.AALOAD);
+        code.invoke(ClassAssembler.INVOKEVIRTUAL, CPU, "execute", "(L" + INSTRUCTION + ";)Z");
+        store(jumped);
+        reload();
+        if (last) {
+            code.local(ClassAssembler.ALOAD, CPU_ARG);
+            code.field(ClassAssembler.GETFIELD, CPU, "PC", "I");
+            store(pc);
+        }
+    }
+
+    /**
+     * Translates an instruction, which jumps to the exit with pc and
+     * jumped set if it jumps
+     * @return false if the instruction always jumps, true if it may
+     * fall through to the next one
+     */
+    private boolean emitTranslated(Instruction in) {
+        int cycles = in.cycles + in.additionalCycles;
+        switch (in.family) {
+
+        // Load
+        case NOP: {
+        } break;
+        case LD_R8_HLR: {
+            read(this::pushHl);
+            storeReg(in.reg3);
+        } break;
+        case LD_A_HLRU: {
+            read(this::pushHl);
+            storeReg(Reg.A);
+            incrementHl(in.hlIncrement);
+        } break;
+        case LD_A_N8R: {
+            read(() -> code.pushInt(Bits.clip(16, AddressMap.REGS_START + in.immediate)));
+            storeReg(Reg.A);
+        } break;
+        case LD_A_CR: {
+            read(() -> {
+                pushReg(Reg.C);
+                code.pushInt(AddressMap.REGS_START);
+                code.op(ClassAssembler.IADD);
+            });
+            storeReg(Reg.A);
+        } break;
+        case LD_A_N16R: {
+            read(() -> code.pushInt(in.immediate));
+            storeReg(Reg.A);
+        } break;
+        case LD_A_BCR: {
+            read(() -> pushPair(Reg16.BC));
+            storeReg(Reg.A);
+        } break;
+        case LD_A_DER: {
+            read(() -> pushPair(Reg16.DE));
+            storeReg(Reg.A);
+        } break;
+        case LD_R8_N8: {
+            code.pushInt(in.immediate);
+            storeReg(in.reg3);
+        } break;
+        case LD_R16SP_N16: {
+            code.pushInt(in.immediate);
+            storePairSP(in.reg16);
+        } break;
+        case POP_R16: {
+            pop16();
+            storePair(in.reg16);
+        } break;
+        case LD_HLR_R8: {
+            write(this::pushHl, () -> pushReg(in.reg0));
+        } break;
+        case LD_HLRU_A: {
+            write(this::pushHl, () -> pushReg(Reg.A));
+            incrementHl(in.hlIncrement);
+        } break;
+        case LD_N8R_A: {
+            write(() -> code.pushInt(Bits.clip(16, AddressMap.REGS_START + in.immediate)),
+                    () -> pushReg(Reg.A));
+        } break;
+        case LD_CR_A: {
+            write(() -> {
+                pushReg(Reg.C);
+                code.pushInt(AddressMap.REGS_START);
+                code.op(ClassAssembler.IADD);
+            }, () -> pushReg(Reg.A));
+        } break;
+        case LD_N16R_A: {
+            write(() -> code.pushInt(in.immediate), () -> pushReg(Reg.A));
+        } break;
+        case LD_BCR_A: {
+            write(() -> pushPair(Reg16.BC), () -> pushReg(Reg.A));
+        } break;
+        case LD_DER_A: {
+            write(() -> pushPair(Reg16.DE), () -> pushReg(Reg.A));
+        } break;
+        case LD_HLR_N8: {
+            write(this::pushHl, () -> code.pushInt(in.immediate));
+        } break;
+        case LD_N16R_SP: {
+            write(() -> code.pushInt(in.immediate), () -> pushLow(sp));
+            write(() -> code.pushInt(Bits.clip(16, in.immediate + 1)), () -> pushHigh(sp));
+        } break;
+        case LD_R8_R8: {
+            pushReg(in.reg0);
+            storeReg(in.reg3);
+        } break;
+        case LD_SP_HL: {
+            pushHl();
+            store(sp);
+        } break;
+        case PUSH_R16: {
+            pushPair(in.reg16);
+            push16();
+        } break;
+
+        // Add
+        case ADD_A_N8: {
+            pushReg(Reg.A);
+            code.pushInt(in.immediate);
+            pushCarry(in.carry);
+            alu8("add", "(IIZ)I");
+            aluToReg(Reg.A, FlagSrc.ALU, FlagSrc.V0, FlagSrc.ALU, FlagSrc.ALU);
+        } break;
+        case ADD_A_R8: {
+            pushReg(Reg.A);
+            pushReg(in.reg0);
+            pushCarry(in.carry);
+            alu8("add", "(IIZ)I");
+            aluToReg(Reg.A, FlagSrc.ALU, FlagSrc.V0, FlagSrc.ALU, FlagSrc.ALU);
+        } break;
+        case ADD_A_HLR: {
+            pushReg(Reg.A);
+            read(this::pushHl);
+            pushCarry(in.carry);
+            alu8("add", "(IIZ)I");
+            aluToReg(Reg.A, FlagSrc.ALU, FlagSrc.V0, FlagSrc.ALU, FlagSrc.ALU);
+        } break;
+        case INC_R8: {
+            pushReg(in.reg3);
+            code.pushInt(1);
+            code.pushInt(0);
+            alu8("add", "(IIZ)I");
+            aluToReg(in.reg3, FlagSrc.ALU, FlagSrc.V0, FlagSrc.ALU, FlagSrc.CPU);
+        } break;
+        case INC_HLR: {
+            read(this::pushHl);
+            code.pushInt(1);
+            code.pushInt(0);
+            alu8("add", "(IIZ)I");
+            aluToHl(FlagSrc.ALU, FlagSrc.V0, FlagSrc.ALU, FlagSrc.CPU);
+        } break;
+        case INC_R16SP: {
+            pushPairSP(in.reg16);
+            code.pushInt(1);
+            code.op(ClassAssembler.IADD);
+            clip16();
+            storePairSP(in.reg16);
+        } break;
+        case ADD_HL_R16SP: {
+            pushHl();
+            pushPairSP(in.reg16);
+            code.invoke(ClassAssembler.INVOKESTATIC, ALU, "add16H", "(II)I");
+            store(result);
+            pushValue();
+            storePair(Reg16.HL);
+            combineFlags(FlagSrc.CPU, FlagSrc.V0, FlagSrc.ALU, FlagSrc.ALU);
+        } break;
+        case LD_HLSP_S8: {
+            load(sp);
+            code.pushInt(in.immediate);
+            code.invoke(ClassAssembler.INVOKESTATIC, ALU, "add16L", "(II)I");
+            store(result);
+            pushValue();
+            if (in.editHl) {
+                storePair(Reg16.HL);
+            } else {
+                store(sp);
+            }
+            combineFlags(FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU, FlagSrc.ALU);
+        } break;
+
+        // Subtract
+        case SUB_A_N8: {
+            pushReg(Reg.A);
+            code.pushInt(in.immediate);
+            pushCarry(in.carry);
+            alu8("sub", "(IIZ)I");
+            aluToReg(Reg.A, FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU, FlagSrc.ALU);
+        } break;
+        case SUB_A_R8: {
+            pushReg(Reg.A);
+            pushReg(in.reg0);
+            pushCarry(in.carry);
+            alu8("sub", "(IIZ)I");
+            aluToReg(Reg.A, FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU, FlagSrc.ALU);
+        } break;
+        case SUB_A_HLR: {
+            pushReg(Reg.A);
+            read(this::pushHl);
+            pushCarry(in.carry);
+            alu8("sub", "(IIZ)I");
+            aluToReg(Reg.A, FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU, FlagSrc.ALU);
+        } break;
+        case DEC_R8: {
+            pushReg(in.reg3);
+            code.pushInt(1);
+            code.pushInt(0);
+            alu8("sub", "(IIZ)I");
+            aluToReg(in.reg3, FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU, FlagSrc.CPU);
+        } break;
+        case DEC_HLR: {
+            read(this::pushHl);
+            code.pushInt(1);
+            code.pushInt(0);
+            alu8("sub", "(IIZ)I");
+            aluToHl(FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU, FlagSrc.CPU);
+        } break;
+        case CP_A_N8: {
+            pushReg(Reg.A);
+            code.pushInt(in.immediate);
+            code.pushInt(0);
+            alu8("sub", "(IIZ)I");
+            aluToReg(null, FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU, FlagSrc.ALU);
+        } break;
+        case CP_A_R8: {
+            pushReg(Reg.A);
+            pushReg(in.reg0);
+            code.pushInt(0);
+            alu8("sub", "(IIZ)I");
+            aluToReg(null, FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU, FlagSrc.ALU);
+        } break;
+        case CP_A_HLR: {
+            pushReg(Reg.A);
+            read(this::pushHl);
+            code.pushInt(0);
+            alu8("sub", "(IIZ)I");
+            aluToReg(null, FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU, FlagSrc.ALU);
+        } break;
+        case DEC_R16SP: {
+            pushPairSP(in.reg16);
+            code.pushInt(1);
+            code.op(ClassAssembler.ISUB);
+            clip16();
+            storePairSP(in.reg16);
+        } break;
+
+        // And, or, xor, complement
+        case AND_A_N8:
+        case OR_A_N8:
+        case XOR_A_N8: {
+            pushReg(Reg.A);
+            code.pushInt(in.immediate);
+            logic(in.family);
+        } break;
+        case AND_A_R8:
+        case OR_A_R8:
+        case XOR_A_R8: {
+            pushReg(Reg.A);
+            pushReg(in.reg0);
+            logic(in.family);
+        } break;
+        case AND_A_HLR:
+        case OR_A_HLR:
+        case XOR_A_HLR: {
+            pushReg(Reg.A);
+            read(this::pushHl);
+            logic(in.family);
+        } break;
+        case CPL: {
+            pushReg(Reg.A);
+            code.pushInt(0xFF);
+            code.op(ClassAssembler.IXOR);
+            storeReg(Reg.A);
+            load(regs[Reg.F.ordinal()]);
+            code.pushInt(Alu.maskZNHC(false, true, true, false));
+            code.op(ClassAssembler.IOR);
+            storeReg(Reg.F);
+        } break;
+
+        // Rotate, shift
+        case ROTCA: {
+            pushRotDir(in.rotDir);
+            pushReg(Reg.A);
+            alu8("rotate", "(L" + ROT_DIR + ";I)I");
+            aluToReg(Reg.A, FlagSrc.V0, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
+        } break;
+        case ROTA: {
+            pushRotDir(in.rotDir);
+            pushReg(Reg.A);
+            pushCarry(true);
+            alu8("rotate", "(L" + ROT_DIR + ";IZ)I");
+            aluToReg(Reg.A, FlagSrc.V0, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
+        } break;
+        case ROTC_R8: {
+            pushRotDir(in.rotDir);
+            pushReg(in.reg0);
+            alu8("rotate", "(L" + ROT_DIR + ";I)I");
+            aluToReg(in.reg0, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
+        } break;
+        case ROT_R8: {
+            pushRotDir(in.rotDir);
+            pushReg(in.reg0);
+            pushCarry(true);
+            alu8("rotate", "(L" + ROT_DIR + ";IZ)I");
+            aluToReg(in.reg0, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
+        } break;
+        case ROTC_HLR: {
+            pushRotDir(in.rotDir);
+            read(this::pushHl);
+            alu8("rotate", "(L" + ROT_DIR + ";I)I");
+            aluToHl(FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
+        } break;
+        case ROT_HLR: {
+            pushRotDir(in.rotDir);
+            read(this::pushHl);
+            pushCarry(true);
+            alu8("rotate", "(L" + ROT_DIR + ";IZ)I");
+            aluToHl(FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
+        } break;
+        case SWAP_R8: {
+            pushReg(in.reg0);
+            alu8("swap", "(I)I");
+            aluToReg(in.reg0, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.V0);
+        } break;
+        case SWAP_HLR: {
+            read(this::pushHl);
+            alu8("swap", "(I)I");
+            aluToHl(FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.V0);
+        } break;
+        case SLA_R8:
+        case SRA_R8:
+        case SRL_R8: {
+            pushReg(in.reg0);
+            alu8(shiftName(in.family), "(I)I");
+            aluToReg(in.reg0, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
+        } break;
+        case SLA_HLR:
+        case SRA_HLR:
+        case SRL_HLR: {
+            read(this::pushHl);
+            alu8(shiftName(in.family), "(I)I");
+            aluToHl(FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
+        } break;
+
+        // Bit test and set
+        case BIT_U3_R8: {
+            pushReg(in.reg0);
+            code.pushInt(in.bitIndex);
+            code.invoke(ClassAssembler.INVOKESTATIC, ALU, "testBit", "(II)I");
+            aluToReg(null, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V1, FlagSrc.CPU);
+        } break;
+        case BIT_U3_HLR: {
+            read(this::pushHl);
+            code.pushInt(in.bitIndex);
+            code.invoke(ClassAssembler.INVOKESTATIC, ALU, "testBit", "(II)I");
+            aluToReg(null, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V1, FlagSrc.CPU);
+        } break;
+        case CHG_U3_R8: {
+            pushReg(in.reg0);
+            changeBit(in);
+            storeReg(in.reg0);
+        } break;
+        case CHG_U3_HLR: {
+            pushHl();
+            store(address);
+            read(() -> load(address));
+            changeBit(in);
+            store(result);
+            write(() -> load(address), () -> load(result));
+        } break;
+
+        // Misc. ALU
+        case DAA: {
+            pushReg(Reg.A);
+            pushFlag(Alu.Flag.N);
+            pushFlag(Alu.Flag.H);
+            pushFlag(Alu.Flag.C);
+            alu8("bcdAdjust", "(IZZZ)I");
+            aluToReg(Reg.A, FlagSrc.ALU, FlagSrc.CPU, FlagSrc.V0, FlagSrc.ALU);
+        } break;
+        case SCCF: {
+            // Keeps Z, and sets C, or complements it if the opcode says so
+            pushReg(Reg.F);
+            code.pushInt(in.carry ? Alu.maskZNHC(true, false, false, true)
+                    : Alu.maskZNHC(true, false, false, false));
+            code.op(ClassAssembler.IAND);
+            code.pushInt(Alu.Flag.C.mask());
+            code.op(ClassAssembler.IXOR);
+            storeReg(Reg.F);
+        } break;
+
+        // Jumps
+        case JP_HL: {
+            pushHl();
+            jump(cycles);
+        } return false;
+        case JP_N16:
+        case JR_E8: {
+            code.pushInt(in.immediate);
+            jump(cycles);
+        } return false;
+        case JP_CC_N16:
+        case JR_CC_E8: {
+            ClassAssembler.Label failed = condition(in);
+            code.pushInt(in.immediate);
+            jump(cycles);
+            code.mark(failed);
+            addCycles(in.cycles);
+        } return true;
+
+        // Calls and returns
+        case CALL_N16:
+        case RST_U3: {
+            code.pushInt(in.nextPC);
+            push16();
+            code.pushInt(in.immediate);
+            jump(cycles);
+        } return false;
+        case CALL_CC_N16: {
+            ClassAssembler.Label failed = condition(in);
+            code.pushInt(in.nextPC);
+            push16();
+            code.pushInt(in.immediate);
+            jump(cycles);
+            code.mark(failed);
+            addCycles(in.cycles);
+        } return true;
+        case RET: {
+            pop16();
+            jump(cycles);
+        } return false;
+        case RET_CC: {
+            ClassAssembler.Label failed = condition(in);
+            pop16();
+            jump(cycles);
+            code.mark(failed);
+            addCycles(in.cycles);
+        } return true;
+
+        default:
+            throw new IllegalArgumentException("Interpreted family " + in.family);
+        }
+        addCycles(cycles);
+        return true;
+    }
+
+    /** Loads the registers from the Cpu, with the pending flags stored */
+    private void reload() {
+        code.local(ClassAssembler.ALOAD, CPU_ARG);
+        code.field(ClassAssembler.GETSTATIC, REG16, "AF", "L" + REG16 + ";");
+        code.invoke(ClassAssembler.INVOKEVIRTUAL, CPU, "reg16", "(L" + REG16 + ";)I");
+        storePair(Reg16.AF);
+        for (Reg16 r : new Reg16[] { Reg16.BC, Reg16.DE, Reg16.HL }) {
+            pushRegPairs();
+            code.pushInt(r.index());
+            code.op(ClassAssembler.IALOAD);
+            storePair(r);
+        }
+        code.local(ClassAssembler.ALOAD, CPU_ARG);
+        code.field(ClassAssembler.GETFIELD, CPU, "SP", "I");
+        store(sp);
+        code.local(ClassAssembler.ALOAD, CPU_ARG);
+        code.field(ClassAssembler.GETFIELD, CPU, "nextNonIdleCycle", "J");
+        code.local(ClassAssembler.LSTORE, cycle);
+    }
+
+    /**
+     * Stores the registers back into the Cpu. The flags aren't pending
+     * anymore, as they were stored when the registers were loaded
+     */
+    private void spill() {
+        for (Reg16 r : Reg16.values()) {
+            pushRegPairs();
+            code.pushInt(r.index());
+            pushPair(r);
+            code.op(ClassAssembler.IASTORE);
+        }
+        code.local(ClassAssembler.ALOAD, CPU_ARG);
+        load(sp);
+        code.field(ClassAssembler.PUTFIELD, CPU, "SP", "I");
+        code.local(ClassAssembler.ALOAD, CPU_ARG);
+        code.local(ClassAssembler.LLOAD, cycle);
+        code.field(ClassAssembler.PUTFIELD, CPU, "nextNonIdleCycle", "J");
+    }
+
+    private void loadArgs() {
+        code.local(ClassAssembler.ALOAD, CPU_ARG);
+        code.local(ClassAssembler.ALOAD, BLOCK_ARG);
+    }
+
+    private void pushRegPairs() {
+        code.local(ClassAssembler.ALOAD, CPU_ARG);
+        code.field(ClassAssembler.GETFIELD, CPU, "regPairs", "[I");
+    }
+
+    private void load(int local) {
+        code.local(ClassAssembler.ILOAD, local);
+    }
+
+    private void store(int local) {
+        code.local(ClassAssembler.ISTORE, local);
+    }
+
+    private void pushReg(Reg r) {
+        load(regs[r.ordinal()]);
+    }
+
+    private void storeReg(Reg r) {
+        store(regs[r.ordinal()]);
+    }
+
+    private void pushLow(int local) {
+        load(local);
+        code.pushInt(0xFF);
+        code.op(ClassAssembler.IAND);
+    }
+
+    private void pushHigh(int local) {
+        load(local);
+        code.pushInt(8);
+        code.op(ClassAssembler.IUSHR);
+    }
+
+    private void pushPair(Reg16 r) {
+        pushReg(Reg.values()[2 * r.index()]);
+        code.pushInt(8);
+        code.op(ClassAssembler.ISHL);
+        pushReg(Reg.values()[2 * r.index() + 1]);
+        code.op(ClassAssembler.IOR);
+    }
+
+    private void pushHl() {
+        pushPair(Reg16.HL);
+    }
+
+    /** Stores the 16-bit value on the stack, which it pops */
+    private void storePair(Reg16 r) {
+        code.op(ClassAssembler.DUP);
+        code.pushInt(8);
+        code.op(ClassAssembler.IUSHR);
+        storeReg(Reg.values()[2 * r.index()]);
+        code.pushInt(r == Reg16.AF ? 0xF0 : 0xFF);
+        code.op(ClassAssembler.IAND);
+        storeReg(Reg.values()[2 * r.index() + 1]);
+    }
+
+    private void pushPairSP(Reg16 r) {
+        if (r == Reg16.AF) {
+            load(sp);
+        } else {
+            pushPair(r);
+        }
+    }
+
+    private void storePairSP(Reg16 r) {
+        if (r == Reg16.AF) {
+            store(sp);
+        } else {
+            storePair(r);
+        }
+    }
+
+    private void incrementHl(int increment) {
+        pushHl();
+        code.pushInt(increment);
+        code.op(ClassAssembler.IADD);
+        clip16();
+        storePair(Reg16.HL);
+    }
+
+    private void clip16() {
+        code.pushInt(0xFFFF);
+        code.op(ClassAssembler.IAND);
+    }
+
+    private void read(Runnable pushAddress) {
+        code.local(ClassAssembler.ALOAD, CPU_ARG);
+        pushAddress.run();
+        code.invoke(ClassAssembler.INVOKEVIRTUAL, CPU, "read8", "(I)I");
+    }
+
+    private void write(Runnable pushAddress, Runnable pushValue) {
+        code.local(ClassAssembler.ALOAD, CPU_ARG);
+        pushAddress.run();
+        pushValue.run();
+        code.invoke(ClassAssembler.INVOKEVIRTUAL, CPU, "write8", "(II)V");
+    }
+
+    /** Pushes the 16-bit value on the stack, which it pops */
+    private void push16() {
+        store(result);
+        load(sp);
+        code.pushInt(2);
+        code.op(ClassAssembler.ISUB);
+        clip16();
+        store(sp);
+        write(() -> load(sp), () -> pushLow(result));
+        write(() -> {
+            load(sp);
+            code.pushInt(1);
+            code.op(ClassAssembler.IADD);
+            clip16();
+        }, () -> pushHigh(result));
+    }
+
+    /** Pops a 16-bit value, reading its high byte first like read16 */
+    private void pop16() {
+        load(sp);
+        store(address);
+        load(sp);
+        code.pushInt(2);
+        code.op(ClassAssembler.IADD);
+        clip16();
+        store(sp);
+        read(() -> {
+            load(address);
+            code.pushInt(1);
+            code.op(ClassAssembler.IADD);
+            clip16();
+        });
+        code.pushInt(8);
+        code.op(ClassAssembler.ISHL);
+        read(() -> load(address));
+        code.op(ClassAssembler.IOR);
+    }
+
+    private void pushFlag(Alu.Flag flag) {
+        pushReg(Reg.F);
+        code.pushInt(flag.index());
+        code.op(ClassAssembler.IUSHR);
+        code.pushInt(1);
+        code.op(ClassAssembler.IAND);
+    }
+
+    /** Pushes the carry flag if the opcode uses it, else false */
+    private void pushCarry(boolean carry) {
+        if (carry) {
+            pushFlag(Alu.Flag.C);
+        } else {
+            code.pushInt(0);
+        }
+    }
+
+    private void pushRotDir(Alu.RotDir d) {
+        code.field(ClassAssembler.GETSTATIC, ROT_DIR, d.name(), "L" + ROT_DIR + ";");
+    }
+
+    /** Calls an 8-bit Alu operation, looked up in tables if enabled */
+    private void alu8(String name, String descriptor) {
+        code.invoke(ClassAssembler.INVOKESTATIC, aluTables ? ALU_TABLES : ALU,
+                name, descriptor);
+    }
+
+    private void logic(Opcode.Family family) {
+        String name;
+        FlagSrc h;
+        switch (family) {
+            case AND_A_N8: case AND_A_R8: case AND_A_HLR:
+                name = "and";
+                h = FlagSrc.V1;
+                break;
+            case OR_A_N8: case OR_A_R8: case OR_A_HLR:
+                name = "or";
+                h = FlagSrc.V0;
+                break;
+            default:
+                name = "xor";
+                h = FlagSrc.V0;
+        }
+        code.invoke(ClassAssembler.INVOKESTATIC, ALU, name, "(II)I");
+        aluToReg(Reg.A, FlagSrc.ALU, FlagSrc.V0, h, FlagSrc.V0);
+    }
+
+    private static String shiftName(Opcode.Family family) {
+        switch (family) {
+            case SLA_R8: case SLA_HLR: return "shiftLeft";
+            case SRA_R8: case SRA_HLR: return "shiftRightA";
+            default: return "shiftRightL";
+        }
+    }
+
+    private void changeBit(Instruction in) {
+        if (in.bitValue) {
+            code.pushInt(1 << in.bitIndex);
+            code.op(ClassAssembler.IOR);
+        } else {
+            code.pushInt(~(1 << in.bitIndex) & 0xFF);
+            code.op(ClassAssembler.IAND);
+        }
+    }
+
+    private void pushValue() {
+        load(result);
+        code.pushInt(8);
+        code.op(ClassAssembler.IUSHR);
+    }
+
+    /**
+     * Stores the packed Alu result on the stack into a register, if any,
+     * and combines its flags
+     */
+    private void aluToReg(Reg r, FlagSrc z, FlagSrc n, FlagSrc h, FlagSrc c) {
+        store(result);
+        if (r != null) {
+            pushValue();
+            storeReg(r);
+        }
+        combineFlags(z, n, h, c);
+    }
+
+    /**
+     * Writes the packed Alu result on the stack at the address in HL, and
+     * combines its flags
+     */
+    private void aluToHl(FlagSrc z, FlagSrc n, FlagSrc h, FlagSrc c) {
+        store(result);
+        write(this::pushHl, this::pushValue);
+        combineFlags(z, n, h, c);
+    }
+
+    /** Combines the flags of the result with those of F, into F */
+    private void combineFlags(FlagSrc z, FlagSrc n, FlagSrc h, FlagSrc c) {
+        int aluMask = flagMask(FlagSrc.ALU, z, n, h, c);
+        int cpuMask = flagMask(FlagSrc.CPU, z, n, h, c);
+        int setMask = flagMask(FlagSrc.V1, z, n, h, c);
+        code.pushInt(setMask);
+        if (aluMask != 0) {
+            load(result);
+            code.pushInt(aluMask);
+            code.op(ClassAssembler.IAND);
+            code.op(ClassAssembler.IOR);
+        }
+        if (cpuMask != 0) {
+            pushReg(Reg.F);
+            code.pushInt(cpuMask);
+            code.op(ClassAssembler.IAND);
+            code.op(ClassAssembler.IOR);
+        }
+        storeReg(Reg.F);
+    }
+
+    private static int flagMask(FlagSrc src, FlagSrc z, FlagSrc n, FlagSrc h, FlagSrc c) {
+        return Alu.maskZNHC(z == src, n == src, h == src, c == src);
+    }
+
+    /** @return a label to jump to if the condition of the instruction fails */
+    private ClassAssembler.Label condition(Instruction in) {
+        ClassAssembler.Label failed = new ClassAssembler.Label();
+        pushReg(Reg.F);
+        code.pushInt(in.conditionFlag.mask());
+        code.op(ClassAssembler.IAND);
+        code.jump(in.conditionValue ? ClassAssembler.IFEQ : ClassAssembler.IFNE, failed);
+        return failed;
+    }
+
+    /** Jumps to the address on the stack, out of the block */
+    private void jump(int cycles) {
+        store(pc);
+        code.pushInt(1);
+        store(jumped);
+        addCycles(cycles);
+        code.jump(ClassAssembler.GOTO, exit);
+    }
+
+    private void addCycles(int cycles) {
+        code.local(ClassAssembler.LLOAD, cycle);
+        code.pushLong(cycles);
+        code.op(ClassAssembler.LADD);
+        code.local(ClassAssembler.LSTORE, cycle);
+    }
+
+}
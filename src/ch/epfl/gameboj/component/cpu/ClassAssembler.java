@@ -0,0 +1,330 @@
+package ch.epfl.gameboj.component.cpu;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ClassAssembler
+ *
+ * A minimal writer of class files, for the classes generated by the Cpu at
+ * run time. Classes are written in version 49, whose verifier infers the
+ * types of the stack and locals by itself, so that the code of a method
+ * needs no stack map frames, only its maximum stack size and its locals
+ *
+ * @author Ulysse Ramage (282300)
+ */
+final class ClassAssembler {
+
+    /** Opcodes, see the Java Virtual Machine Specification, chapter 6 */
+    static final int ICONST_0 = 0x03, LCONST_0 = 0x09, BIPUSH = 0x10,
+            SIPUSH = 0x11, LDC_W = 0x13, LDC2_W = 0x14;
+    static final int ILOAD = 0x15, LLOAD = 0x16, ALOAD = 0x19;
+    static final int ISTORE = 0x36, LSTORE = 0x37;
+    static final int IALOAD = 0x2E, AALOAD = 0x32, IASTORE = 0x4F;
+    static final int DUP = 0x59;
+    static final int IADD = 0x60, LADD = 0x61, ISUB = 0x64, IAND = 0x7E,
+            IOR = 0x80, IXOR = 0x82, ISHL = 0x78, IUSHR = 0x7C;
+    static final int IFEQ = 0x99, IFNE = 0x9A, GOTO = 0xA7;
+    static final int IRETURN = 0xAC, RETURN = 0xB1;
+    static final int GETSTATIC = 0xB2, GETFIELD = 0xB4, PUTFIELD = 0xB5;
+    static final int INVOKEVIRTUAL = 0xB6, INVOKESPECIAL = 0xB7,
+            INVOKESTATIC = 0xB8;
+
+    /** Access flags */
+    static final int ACC_PUBLIC = 0x0001, ACC_FINAL = 0x0010,
+            ACC_SUPER = 0x0020;
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int MAJOR_VERSION = 49;
+
+    private static final int CONSTANT_UTF8 = 1, CONSTANT_INTEGER = 3,
+            CONSTANT_LONG = 5, CONSTANT_CLASS = 7, CONSTANT_FIELDREF = 9,
+            CONSTANT_METHODREF = 10, CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> poolIndices = new HashMap<>();
+    private int poolSize = 1;
+
+    private final int name, superName;
+    private final int[] interfaces;
+    private final List<Code> methods = new ArrayList<>();
+
+    /**
+     * Creates a new assembler of a final class
+     * @param name the internal name of the class
+     * @param superName the internal name of its super class
+     * @param interfaces the internal names of the interfaces it implements
+     */
+    ClassAssembler(String name, String superName, String... interfaces) {
+        this.name = classConstant(name);
+        this.superName = classConstant(superName);
+        this.interfaces = new int[interfaces.length];
+        for (int i = 0; i < interfaces.length; ++i)
+            this.interfaces[i] = classConstant(interfaces[i]);
+    }
+
+    /**
+     * Adds a method to the class
+     * @param access the access flags of the method
+     * @param name the name of the method
+     * @param descriptor the descriptor of the method
+     * @param argumentSlots the number of local slots used by the arguments,
+     * including {@code this}
+     * @return the code of the method, to be written
+     */
+    Code method(int access, String name, String descriptor, int argumentSlots) {
+        Code code = new Code(access, utf8Constant(name),
+                utf8Constant(descriptor), argumentSlots);
+        methods.add(code);
+        return code;
+    }
+
+    /**
+     * @return the class file
+     * @throws IllegalStateException if a label of a method wasn't marked, or
+     * is too far from a jump to it
+     */
+    byte[] toByteArray() {
+        int code = utf8Constant("Code");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeShort(0);
+            out.writeShort(MAJOR_VERSION);
+            out.writeShort(poolSize);
+            pool.writeTo(out);
+            out.writeShort(ACC_FINAL | ACC_SUPER);
+            out.writeShort(name);
+            out.writeShort(superName);
+            out.writeShort(interfaces.length);
+            for (int i : interfaces)
+                out.writeShort(i);
+            out.writeShort(0);
+            out.writeShort(methods.size());
+            for (Code method : methods)
+                method.writeTo(out, code);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private int constant(String key, int slots, PoolWriter writer) {
+        Integer index = poolIndices.get(key);
+        if (index != null)
+            return index;
+        try {
+            writer.write();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        poolIndices.put(key, poolSize);
+        poolSize += slots;
+        return poolSize - slots;
+    }
+
+    private int utf8Constant(String s) {
+        return constant("U" + s, 1, () -> {
+            poolOut.writeByte(CONSTANT_UTF8);
+            poolOut.writeUTF(s);
+        });
+    }
+
+    private int classConstant(String name) {
+        int utf8 = utf8Constant(name);
+        return constant("C" + name, 1, () -> {
+            poolOut.writeByte(CONSTANT_CLASS);
+            poolOut.writeShort(utf8);
+        });
+    }
+
+    private int intConstant(int v) {
+        return constant("I" + v, 1, () -> {
+            poolOut.writeByte(CONSTANT_INTEGER);
+            poolOut.writeInt(v);
+        });
+    }
+
+    private int longConstant(long v) {
+        return constant("J" + v, 2, () -> {
+            poolOut.writeByte(CONSTANT_LONG);
+            poolOut.writeLong(v);
+        });
+    }
+
+    private int memberConstant(int tag, String owner, String name, String descriptor) {
+        int ownerClass = classConstant(owner);
+        int nameUtf8 = utf8Constant(name), descriptorUtf8 = utf8Constant(descriptor);
+        int nameAndType = constant("N" + name + ":" + descriptor, 1, () -> {
+            poolOut.writeByte(CONSTANT_NAME_AND_TYPE);
+            poolOut.writeShort(nameUtf8);
+            poolOut.writeShort(descriptorUtf8);
+        });
+        return constant(tag + owner + "." + name + ":" + descriptor, 1, () -> {
+            poolOut.writeByte(tag);
+            poolOut.writeShort(ownerClass);
+            poolOut.writeShort(nameAndType);
+        });
+    }
+
+    private interface PoolWriter {
+        void write() throws IOException;
+    }
+
+    /**
+     * ClassAssembler.Label
+     *
+     * A position in the code of a method, which can be jumped to before
+     * being marked
+     */
+    static final class Label {
+
+        private int position = -1;
+        private final List<Integer> jumps = new ArrayList<>();
+
+    }
+
+    /**
+     * ClassAssembler.Code
+     *
+     * The code of a method, written one instruction at a time
+     */
+    final class Code {
+
+        private final int access, name, descriptor;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final List<Label> labels = new ArrayList<>();
+        private int maxStack, maxLocals;
+
+        private Code(int access, int name, int descriptor, int argumentSlots) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.maxLocals = argumentSlots;
+        }
+
+        /**
+         * Reserves slots for a new local variable
+         * @param slots the number of slots of the variable (2 for a long)
+         * @return the index of the variable
+         */
+        int newLocal(int slots) {
+            maxLocals += slots;
+            return maxLocals - slots;
+        }
+
+        /**
+         * Sets the maximum size of the operand stack of the method
+         * @param maxStack the maximum size, in slots
+         */
+        void maxStack(int maxStack) {
+            this.maxStack = maxStack;
+        }
+
+        /** Writes an instruction without operands */
+        void op(int opcode) {
+            bytes.write(opcode);
+        }
+
+        /** Writes an instruction pushing the given integer */
+        void pushInt(int v) {
+            if (-1 <= v && v <= 5) {
+                op(ICONST_0 + v);
+            } else if (v == (byte) v) {
+                op(BIPUSH);
+                bytes.write(v);
+            } else if (v == (short) v) {
+                op(SIPUSH);
+                writeShort(v);
+            } else {
+                op(LDC_W);
+                writeShort(intConstant(v));
+            }
+        }
+
+        /** Writes an instruction pushing the given long */
+        void pushLong(long v) {
+            if (v == 0 || v == 1) {
+                op(LCONST_0 + (int) v);
+            } else {
+                op(LDC2_W);
+                writeShort(longConstant(v));
+            }
+        }
+
+        /** Writes a load or a store of a local variable */
+        void local(int opcode, int index) {
+            op(opcode);
+            bytes.write(index);
+        }
+
+        /** Writes an access to a field */
+        void field(int opcode, String owner, String name, String descriptor) {
+            op(opcode);
+            writeShort(memberConstant(CONSTANT_FIELDREF, owner, name, descriptor));
+        }
+
+        /** Writes a call to a method of a class */
+        void invoke(int opcode, String owner, String name, String descriptor) {
+            op(opcode);
+            writeShort(memberConstant(CONSTANT_METHODREF, owner, name, descriptor));
+        }
+
+        /** Writes a jump to a label */
+        void jump(int opcode, Label label) {
+            if (label.jumps.isEmpty())
+                labels.add(label);
+            label.jumps.add(bytes.size());
+            op(opcode);
+            writeShort(0);
+        }
+
+        /** Marks the position of the next instruction with a label */
+        void mark(Label label) {
+            label.position = bytes.size();
+        }
+
+        private void writeShort(int v) {
+            bytes.write(v >> 8);
+            bytes.write(v);
+        }
+
+        private void writeTo(DataOutputStream out, int codeAttribute) throws IOException {
+            byte[] code = bytes.toByteArray();
+            for (Label label : labels) {
+                if (label.position < 0)
+                    throw new IllegalStateException("Unmarked label");
+                for (int jump : label.jumps) {
+                    int offset = label.position - jump;
+                    if (offset != (short) offset)
+                        throw new IllegalStateException("Jump too far");
+                    code[jump + 1] = (byte) (offset >> 8);
+                    code[jump + 2] = (byte) offset;
+                }
+            }
+            out.writeShort(access);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+            out.writeShort(codeAttribute);
+            out.writeInt(12 + code.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+
+    }
+
+}
@@ -6,6 +6,14 @@ import ch.epfl.gameboj.bits.Bits;
 import ch.epfl.gameboj.component.Clocked;
 import ch.epfl.gameboj.component.Component;
 import ch.epfl.gameboj.component.memory.Ram;
+import ch.epfl.gameboj.component.memory.RamController;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Cpu
@@ -18,6 +26,7 @@ import ch.epfl.gameboj.component.memory.Ram;
 public final class Cpu implements Component, Clocked {
 
     private Bus bus;
+    private Scheduler scheduler;
 
     /** Indexed arrays containing all possible opcodes (DIRECT, PREFIXED) */
     private static final Opcode[] DIRECT_OPCODE_TABLE =
@@ -26,15 +35,14 @@ public final class Cpu implements Component, Clocked {
             buildOpcodeTable(Opcode.Kind.PREFIXED);
     private static final int OPCODE_PREFIX = 0xCB;
 
-    /** Registers */
-    private enum Reg implements Register {
+    /** Registers, stored as 16-bit pairs: Reg at index i is in pair i / 2 */
+    enum Reg implements Register {
         A, F, B, C, D, E, H, L
     }
-    private enum Reg16 implements Register {
+    enum Reg16 implements Register {
         AF, BC, DE, HL
     }
-    private final Reg[] regValues = Reg.values();
-    private final RegisterFile<Reg> regFile = new RegisterFile<>(regValues);
+    private final int[] regPairs = new int[4];
 
     private int PC, SP;
     private long nextNonIdleCycle;
@@ -45,14 +53,78 @@ public final class Cpu implements Component, Clocked {
     public enum Interrupt implements Bit {
         VBLANK, LCD_STAT, TIMER, SERIAL, JOYPAD
     }
-    private int IE, IF;
+    private final InterruptController interrupts =
+            new InterruptController(this::rescheduleIfHalted);
     boolean IME = false;
 
-    private enum FlagSrc {
+    enum FlagSrc {
         V0, V1, ALU, CPU
     }
 
     private final Ram highRam = new Ram(AddressMap.HIGH_RAM_SIZE);
+    private final RamController highRamController =
+            new RamController(highRam, AddressMap.HIGH_RAM_START);
+
+    /** Decoded instructions, indexed by address */
+    private final Instruction[] decodedInstructions = new Instruction[0x10000];
+
+    /** Instruction latch, reused for instructions that can't be cached */
+    private final Instruction latch = new Instruction();
+
+    /** Execution options */
+    public enum Option {
+        /**
+         * Counts how often each block of instructions is entered, and
+         * compiles the hot ones to bytecode, run in one go ahead of the
+         * other components when possible (see {@link Block})
+         */
+        TIERED_EXECUTION,
+        /**
+         * Stores the flags of an Alu operation in F only once they are read,
+         * which most of the time doesn't happen before the next operation
+         * overwrites them
+         */
+        LAZY_FLAGS,
+        /** Looks up the results of Alu operations in {@link AluTables} */
+        ALU_TABLES
+    }
+
+    /** Tiered execution: entry counts and hot blocks, indexed by address */
+    private static final int HOT_BLOCK_THRESHOLD = 64;
+    private static final int MAX_BLOCK_SIZE = 32;
+    private static final Set<Opcode.Family> BLOCK_END_FAMILIES = EnumSet.of(
+            Opcode.Family.JP_HL, Opcode.Family.JP_N16, Opcode.Family.JP_CC_N16,
+            Opcode.Family.JR_E8, Opcode.Family.JR_CC_E8,
+            Opcode.Family.CALL_N16, Opcode.Family.CALL_CC_N16,
+            Opcode.Family.RST_U3, Opcode.Family.RET, Opcode.Family.RET_CC,
+            Opcode.Family.RETI, Opcode.Family.EDI,
+            Opcode.Family.HALT, Opcode.Family.STOP
+    );
+    private final int[] blockEntries;
+    private final Block[] blocks;
+
+    /** Lazy flags: the last Alu flags and their sources, not yet stored in F */
+    private final boolean lazyFlags;
+    private boolean flagsPending;
+    private int pendingValueFlags;
+    private FlagSrc pendingZ, pendingN, pendingH, pendingC;
+
+    /** Whether Alu operations are looked up in tables */
+    private final boolean aluTables;
+
+    /**
+     * Creates a new Cpu with the given execution options
+     * @param options the options to enable
+     */
+    public Cpu(Option... options) {
+        Set<Option> enabled = EnumSet.noneOf(Option.class);
+        enabled.addAll(Arrays.asList(options));
+        boolean tiered = enabled.contains(Option.TIERED_EXECUTION);
+        blockEntries = tiered ? new int[0x10000] : null;
+        blocks = tiered ? new Block[0x10000] : null;
+        lazyFlags = enabled.contains(Option.LAZY_FLAGS);
+        aluTables = enabled.contains(Option.ALU_TABLES);
+    }
 
     /**
      * {@inheritDoc}
@@ -60,8 +132,8 @@ public final class Cpu implements Component, Clocked {
     @Override
     public int read(int address) {
         Preconditions.checkBits16(address);
-        if (address == AddressMap.REG_IE) return IE;
-        if (address == AddressMap.REG_IF) return IF;
+        if (address == AddressMap.REG_IE) return interrupts.enabled();
+        if (address == AddressMap.REG_IF) return interrupts.requested();
         if (isWithinHighRamBounds(address)) {
             return highRam.read(address - AddressMap.HIGH_RAM_START);
         }
@@ -75,8 +147,12 @@ public final class Cpu implements Component, Clocked {
     public void write(int address, int data) {
         Preconditions.checkBits16(address);
         Preconditions.checkBits8(data);
-        if (address == AddressMap.REG_IE) IE = data;
-        if (address == AddressMap.REG_IF) IF = data;
+        if (address == AddressMap.REG_IE) {
+            interrupts.setEnabled(data);
+        }
+        if (address == AddressMap.REG_IF) {
+            interrupts.setRequested(data);
+        }
         if (isWithinHighRamBounds(address)) {
             highRam.write(address - AddressMap.HIGH_RAM_START, data);
         }
@@ -84,13 +160,38 @@ public final class Cpu implements Component, Clocked {
 
     /**
      * {@inheritDoc}
+     * Only attaches handlers to the interrupt registers, and the high ram as
+     * plain memory
      */
     @Override
     public void attachTo(Bus bus) {
-        Component.super.attachTo(bus);
+        bus.attachRegister(AddressMap.REG_IF, interrupts::requested, interrupts::setRequested);
+        bus.attachRegister(AddressMap.REG_IE, interrupts::enabled, interrupts::setEnabled);
+        highRamController.attachTo(bus);
         this.bus = bus;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void attachTo(Scheduler scheduler) {
+        Clocked.super.attachTo(scheduler);
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * {@inheritDoc}
+     * A halted processor wakes up as soon as an interrupt is pending
+     */
+    @Override
+    public long nextEventCycle(long cycle) {
+        if (nextNonIdleCycle == Long.MAX_VALUE) {
+            return hasCurrentInterrupt() ? cycle : Long.MAX_VALUE;
+        }
+        return nextNonIdleCycle;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -108,7 +209,7 @@ public final class Cpu implements Component, Clocked {
      * @param i the interrupt to raise
      */
     public void requestInterrupt(Interrupt i) {
-        IF = Bits.set(IF, i.index(), true);
+        interrupts.request(i);
     }
 
     /**
@@ -142,52 +243,173 @@ public final class Cpu implements Component, Clocked {
         return opcodeTable;
     }
 
-    private boolean isWithinHighRamBounds(int address) {
+    /** A halted processor has to be woken up when an interrupt becomes pending */
+    private void rescheduleIfHalted() {
+        if (scheduler != null && nextNonIdleCycle == Long.MAX_VALUE)
+            scheduler.reschedule(this);
+    }
+
+    private static boolean isWithinHighRamBounds(int address) {
         return (AddressMap.HIGH_RAM_START <= address
                 && address < AddressMap.HIGH_RAM_END);
     }
 
     /** Simulates a cycle */
     private void reallyCycle(long cycle) {
-        Interrupt interrupt = getCurrentInterrupt();
+        Interrupt interrupt = interrupts.highestPending();
         if (IME && interrupt != null) {
             handleInterrupt(interrupt);
+            if (blocks != null) enterBlock(PC);
+        } else if (blocks != null && !bus.isMemoryBlocked()) {
+            runTiered();
         } else {
-            Opcode opcode = isOpcodePrefixed() ?
-                    PREFIXED_OPCODE_TABLE[readOpcodeAfterPrefix()] :
-                    DIRECT_OPCODE_TABLE[readOpcode()];
+            execute(fetch());
+        }
+    }
 
-            alteredPC = false;
-            conditionFailed = false;
-            dispatch(opcode.encoding);
+    /**
+     * Executes an instruction, and moves PC to the next one if it didn't jump
+     * @return true if and only if the instruction jumped
+     */
+    private boolean execute(Instruction instruction) {
+        alteredPC = false;
+        conditionFailed = false;
+        dispatch(instruction);
+
+        boolean jumped = alteredPC;
+        if (!jumped) setPC(instruction.nextPC);
+        int additionalCycles = conditionFailed ? 0 : instruction.additionalCycles;
+        nextNonIdleCycle += instruction.cycles + additionalCycles;
+        return jumped;
+    }
 
-            if (!alteredPC) setPC(PC + opcode.totalBytes);
-            int additionalCycles = conditionFailed ? 0 : opcode.additionalCycles;
-            nextNonIdleCycle += opcode.cycles + additionalCycles;
+    /** Runs the hot block at PC if there is one, else a single instruction */
+    private void runTiered() {
+        Block block = blocks[PC];
+        if (block != null && !block.isUpToDate(bus)) {
+            // Modified code: has to get hot again before being compiled
+            blocks[PC] = null;
+            blockEntries[PC] = 0;
+            block = null;
         }
+        if (block == null) {
+            if (execute(fetch())) enterBlock(PC);
+            return;
+        }
+        if (block.code.run(this, block)) enterBlock(PC);
     }
 
-    /** Executes an opcode instruction, modifying the Cpu registers */
-    private void dispatch(int opcodeEncoding) {
-        Opcode opcode = isOpcodePrefixed() ?
-                PREFIXED_OPCODE_TABLE[opcodeEncoding] :
-                DIRECT_OPCODE_TABLE[opcodeEncoding];
+    /**
+     * Tells whether the next instruction of a running block can run right
+     * away, that is if nothing else happens in between, else it is run by
+     * the next cycle call
+     * @param block the running block
+     * @param cycle the cycle at which the next instruction would run
+     */
+    private boolean continueBlock(Block block, long cycle) {
+        return block.isUpToDate(bus) && !bus.isMemoryBlocked()
+                && !(IME && hasCurrentInterrupt())
+                && scheduler != null
+                && scheduler.runAhead(this, cycle);
+    }
 
-        switch (opcode.family) {
+    /**
+     * Counts an entry into the block at the given address, unless the memory
+     * is blocked, as the block would then be compiled from blocked memory
+     */
+    private void enterBlock(int address) {
+        if (bus.isMemoryBlocked())
+            return;
+        if (++blockEntries[address] == HOT_BLOCK_THRESHOLD)
+            blocks[address] = compileBlock(address);
+    }
+
+    /**
+     * Decodes the block starting at an address, which ends with the first
+     * instruction that can jump or that changes the state of interrupts
+     * @return the block, or null if the address can't start a block
+     */
+    private Block compileBlock(int address) {
+        List<Instruction> instructions = new ArrayList<>();
+        int pc = address;
+        while (instructions.size() < MAX_BLOCK_SIZE && opcodeAt(pc) != null) {
+            Instruction instruction = decode(pc);
+            if (!instruction.isCacheable())
+                break;
+            instructions.add(instruction);
+            if (BLOCK_END_FAMILIES.contains(instruction.family))
+                break;
+            pc = instruction.nextPC;
+        }
+        return instructions.isEmpty() ? null : new Block(instructions, aluTables);
+    }
+
+    /**
+     * Gives the instruction at PC, which is only decoded if it isn't in
+     * the cache yet, or if the memory it was decoded from has been modified.
+     * While the memory is blocked, the cache is neither used nor filled
+     */
+    private Instruction fetch() {
+        if (bus.isMemoryBlocked())
+            return decode(PC);
+        Instruction cached = decodedInstructions[PC];
+        if (cached != null && cached.isUpToDate(bus))
+            return cached;
+        Instruction instruction = decode(PC);
+        decodedInstructions[PC] = instruction.isCacheable() ? instruction : null;
+        return instruction;
+    }
+
+    /** @return the opcode at the given address, or null if it is unknown */
+    private Opcode opcodeAt(int address) {
+        int encoding = read8(address);
+        return (encoding == OPCODE_PREFIX) ?
+                PREFIXED_OPCODE_TABLE[read8(clip16(address + 1))] :
+                DIRECT_OPCODE_TABLE[encoding];
+    }
+
+    /**
+     * Reads and decodes the instruction at the given address, reading each
+     * of its bytes exactly once. Instructions that can't be cached, or that
+     * are read while the memory is blocked, are decoded into the latch,
+     * which is only valid until the next decode
+     */
+    private Instruction decode(int address) {
+        Opcode opcode = opcodeAt(address);
+        boolean prefixed = (opcode.kind == Opcode.Kind.PREFIXED);
+
+        int immediateAddress = clip16(address + (prefixed ? 2 : 1));
+        int immediate;
+        switch (opcode.totalBytes - (prefixed ? 2 : 1)) {
+            case 1: immediate = read8(immediateAddress); break;
+            case 2: immediate = read16(immediateAddress); break;
+            default: immediate = 0;
+        }
+
+        int lastAddress = clip16(address + opcode.totalBytes - 1);
+        Instruction instruction = (isCacheable(address) && isCacheable(lastAddress)
+                && !bus.isMemoryBlocked()) ? new Instruction() : latch;
+        instruction.load(address, opcode, immediate, bus);
+        return instruction;
+    }
+
+    /** Executes a decoded instruction, modifying the Cpu registers */
+    private void dispatch(Instruction in) {
+        switch (in.family) {
 
         // Load
         case NOP: {
         } break;
         case LD_R8_HLR: {
-            setReg(extractReg(opcode, 3), read8AtHl());
+            setReg(in.reg3, read8AtHl());
         } break;
         case LD_A_HLRU: {
-            int address = reg16(Reg16.HL) + extractHlIncrement(opcode);
+            int address = reg16(Reg16.HL) + in.hlIncrement;
             setReg(Reg.A, read8AtHl());
             setReg16(Reg16.HL, clip16(address));
         } break;
         case LD_A_N8R: {
-            int address = clip16(AddressMap.REGS_START + read8AfterOpcode());
+            int address = clip16(AddressMap.REGS_START + in.immediate);
             setReg(Reg.A, read8(address));
         } break;
         case LD_A_CR: {
@@ -195,7 +417,7 @@ public final class Cpu implements Component, Clocked {
             setReg(Reg.A, read8(address));
         } break;
         case LD_A_N16R: {
-            setReg(Reg.A, read8(read16AfterOpcode()));
+            setReg(Reg.A, read8(in.immediate));
         } break;
         case LD_A_BCR: {
             setReg(Reg.A, read8(reg16(Reg16.BC)));
@@ -204,24 +426,24 @@ public final class Cpu implements Component, Clocked {
             setReg(Reg.A, read8(reg16(Reg16.DE)));
         } break;
         case LD_R8_N8: {
-            setReg(extractReg(opcode, 3), read8AfterOpcode());
+            setReg(in.reg3, in.immediate);
         } break;
         case LD_R16SP_N16: {
-            setReg16SP(extractReg16(opcode), read16AfterOpcode());
+            setReg16SP(in.reg16, in.immediate);
         } break;
         case POP_R16: {
-            setReg16(extractReg16(opcode), pop16());
+            setReg16(in.reg16, pop16());
         } break;
         case LD_HLR_R8: {
-            write8AtHl(reg(extractReg(opcode, 0)));
+            write8AtHl(reg(in.reg0));
         } break;
         case LD_HLRU_A: {
             write8AtHl(reg(Reg.A));
-            int value = clip16(reg16(Reg16.HL) + extractHlIncrement(opcode));
+            int value = clip16(reg16(Reg16.HL) + in.hlIncrement);
             setReg16(Reg16.HL, value);
         } break;
         case LD_N8R_A: {
-            int address = clip16(AddressMap.REGS_START + read8AfterOpcode());
+            int address = clip16(AddressMap.REGS_START + in.immediate);
             write8(address, reg(Reg.A));
         } break;
         case LD_CR_A: {
@@ -229,7 +451,7 @@ public final class Cpu implements Component, Clocked {
             write8(address, reg(Reg.A));
         } break;
         case LD_N16R_A: {
-            write8(read16AfterOpcode(), reg(Reg.A));
+            write8(in.immediate, reg(Reg.A));
         } break;
         case LD_BCR_A: {
             write8(reg16(Reg16.BC), reg(Reg.A));
@@ -238,69 +460,67 @@ public final class Cpu implements Component, Clocked {
             write8(reg16(Reg16.DE), reg(Reg.A));
         } break;
         case LD_HLR_N8: {
-            write8(reg16(Reg16.HL), read8AfterOpcode());
+            write8(reg16(Reg16.HL), in.immediate);
         } break;
         case LD_N16R_SP: {
-            write16(read16AfterOpcode(), SP);
+            write16(in.immediate, SP);
         } break;
         case LD_R8_R8: {
-            Reg opcodeReg = extractReg(opcode, 0);
-            setReg(extractReg(opcode, 3), reg(opcodeReg));
+            Reg opcodeReg = in.reg0;
+            setReg(in.reg3, reg(opcodeReg));
         } break;
         case LD_SP_HL: {
             SP = reg16(Reg16.HL);
         } break;
         case PUSH_R16: {
-            push16(reg16(extractReg16(opcode)));
+            push16(reg16(in.reg16));
         } break;
 
         // Add
         case ADD_A_N8: {
-            boolean carry = extractCarry(opcode);
-            int result = Alu.add(reg(Reg.A), read8AfterOpcode(), carry && getC());
+            boolean carry = in.carry;
+            int result = add(reg(Reg.A), in.immediate, carry && getC());
             setRegFromAlu(Reg.A, result);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.ALU, FlagSrc.ALU);
         } break;
         case ADD_A_R8: {
-            Reg opcodeReg = extractReg(opcode, 0);
-            boolean carry = extractCarry(opcode);
-            int result = Alu.add(reg(Reg.A), reg(opcodeReg), carry && getC());
+            Reg opcodeReg = in.reg0;
+            boolean carry = in.carry;
+            int result = add(reg(Reg.A), reg(opcodeReg), carry && getC());
             setRegFromAlu(Reg.A, result);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.ALU, FlagSrc.ALU);
         } break;
         case ADD_A_HLR: {
-            boolean carry = extractCarry(opcode);
-            int result = Alu.add(reg(Reg.A), read8AtHl(), carry && getC());
+            boolean carry = in.carry;
+            int result = add(reg(Reg.A), read8AtHl(), carry && getC());
             setRegFromAlu(Reg.A, result);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.ALU, FlagSrc.ALU);
         } break;
         case INC_R8: {
-            Reg opcodeReg = extractReg(opcode, 3);
-            int result = Alu.add(reg(opcodeReg), 1);
+            Reg opcodeReg = in.reg3;
+            int result = add(reg(opcodeReg), 1, false);
             setRegFromAlu(opcodeReg, result);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.ALU, FlagSrc.CPU);
         } break;
         case INC_HLR: {
-            int result = Alu.add(read8AtHl(), 1);
+            int result = add(read8AtHl(), 1, false);
             write8AtHl(Alu.unpackValue(result));
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.ALU, FlagSrc.CPU);
         } break;
         case INC_R16SP: {
-            Reg16 opcodeReg16 = extractReg16(opcode);
+            Reg16 opcodeReg16 = in.reg16;
             int result = Alu.add16H(reg16SP(opcodeReg16), 1);
             setReg16SP(opcodeReg16, Alu.unpackValue(result));
         } break;
         case ADD_HL_R16SP: {
-            Reg16 opcodeReg16 = extractReg16(opcode);
+            Reg16 opcodeReg16 = in.reg16;
             int result = Alu.add16H(reg16(Reg16.HL), reg16SP(opcodeReg16));
             setReg16(Reg16.HL, Alu.unpackValue(result));
             combineAluFlags(result, FlagSrc.CPU, FlagSrc.V0, FlagSrc.ALU, FlagSrc.ALU);
         } break;
         case LD_HLSP_S8: {
-            int value = Bits.clip(16, Bits.signExtend8(read8AfterOpcode()));
-            boolean editHL = Bits.test(opcode.encoding, 4);
-            int result = Alu.add16L(SP, value);
-            if (editHL) {
+            int result = Alu.add16L(SP, in.immediate);
+            if (in.editHl) {
                 setReg16(Reg16.HL, Alu.unpackValue(result));
             } else {
                 SP = Alu.unpackValue(result);
@@ -310,61 +530,61 @@ public final class Cpu implements Component, Clocked {
 
         // Subtract
         case SUB_A_N8: {
-            boolean borrow = extractCarry(opcode);
-            int result = Alu.sub(reg(Reg.A), read8AfterOpcode(), borrow && getC());
+            boolean borrow = in.carry;
+            int result = sub(reg(Reg.A), in.immediate, borrow && getC());
             setRegFromAlu(Reg.A, result);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU, FlagSrc.ALU);
         } break;
         case SUB_A_R8: {
-            Reg opcodeReg = extractReg(opcode, 0);
-            boolean borrow = extractCarry(opcode);
-            int result = Alu.sub(reg(Reg.A), reg(opcodeReg), borrow && getC());
+            Reg opcodeReg = in.reg0;
+            boolean borrow = in.carry;
+            int result = sub(reg(Reg.A), reg(opcodeReg), borrow && getC());
             setRegFromAlu(Reg.A, result);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU, FlagSrc.ALU);
         } break;
         case SUB_A_HLR: {
-            boolean borrow = extractCarry(opcode);
-            int result = Alu.sub(reg(Reg.A), read8AtHl(), borrow && getC());
+            boolean borrow = in.carry;
+            int result = sub(reg(Reg.A), read8AtHl(), borrow && getC());
             setRegFromAlu(Reg.A, result);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU, FlagSrc.ALU);
         } break;
         case DEC_R8: {
-            Reg opcodeReg = extractReg(opcode, 3);
-            int result = Alu.sub(reg(opcodeReg), 1);
+            Reg opcodeReg = in.reg3;
+            int result = sub(reg(opcodeReg), 1, false);
             setRegFromAlu(opcodeReg, result);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU, FlagSrc.CPU);
         } break;
         case DEC_HLR: {
-            int result = Alu.sub(read8AtHl(), 1);
+            int result = sub(read8AtHl(), 1, false);
             write8AtHl(Alu.unpackValue(result));
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU, FlagSrc.CPU);
         } break;
         case CP_A_N8: {
-            int result = Alu.sub(reg(Reg.A), read8AfterOpcode());
+            int result = sub(reg(Reg.A), in.immediate, false);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU, FlagSrc.ALU);
         } break;
         case CP_A_R8: {
-            Reg opcodeReg = extractReg(opcode, 0);
-            int result = Alu.sub(reg(Reg.A), reg(opcodeReg));
+            Reg opcodeReg = in.reg0;
+            int result = sub(reg(Reg.A), reg(opcodeReg), false);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU, FlagSrc.ALU);
         } break;
         case CP_A_HLR: {
-            int result = Alu.sub(reg(Reg.A), read8AtHl());
+            int result = sub(reg(Reg.A), read8AtHl(), false);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU, FlagSrc.ALU);
         } break;
         case DEC_R16SP: {
-            Reg16 opcodeReg16 = extractReg16(opcode);
+            Reg16 opcodeReg16 = in.reg16;
             setReg16SP(opcodeReg16, Bits.clip(16, reg16SP(opcodeReg16) - 1));
         } break;
 
         // And, or, xor, complement
         case AND_A_N8: {
-            int result = Alu.and(reg(Reg.A), read8AfterOpcode());
+            int result = Alu.and(reg(Reg.A), in.immediate);
             setRegFromAlu(Reg.A, result);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V1, FlagSrc.V0);
         } break;
         case AND_A_R8: {
-            Reg opcodeReg = extractReg(opcode, 0);
+            Reg opcodeReg = in.reg0;
             int result = Alu.and(reg(Reg.A), reg(opcodeReg));
             setRegFromAlu(Reg.A, result);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V1, FlagSrc.V0);
@@ -375,12 +595,12 @@ public final class Cpu implements Component, Clocked {
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V1, FlagSrc.V0);
         } break;
         case OR_A_N8: {
-            int result = Alu.or(reg(Reg.A), read8AfterOpcode());
+            int result = Alu.or(reg(Reg.A), in.immediate);
             setRegFromAlu(Reg.A, result);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.V0);
         } break;
         case OR_A_R8: {
-            Reg opcodeReg = extractReg(opcode, 0);
+            Reg opcodeReg = in.reg0;
             int result = Alu.or(reg(Reg.A), reg(opcodeReg));
             setRegFromAlu(Reg.A, result);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.V0);
@@ -391,12 +611,12 @@ public final class Cpu implements Component, Clocked {
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.V0);
         } break;
         case XOR_A_N8: {
-            int result = Alu.xor(reg(Reg.A), read8AfterOpcode());
+            int result = Alu.xor(reg(Reg.A), in.immediate);
             setRegFromAlu(Reg.A, result);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.V0);
         } break;
         case XOR_A_R8: {
-            Reg opcodeReg = extractReg(opcode, 0);
+            Reg opcodeReg = in.reg0;
             int result = Alu.xor(reg(Reg.A), reg(opcodeReg));
             setRegFromAlu(Reg.A, result);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.V0);
@@ -413,117 +633,117 @@ public final class Cpu implements Component, Clocked {
 
         // Rotate, shift
         case ROTCA: {
-            Alu.RotDir rotDir = extractRotateDirection(opcode);
-            int result = Alu.rotate(rotDir, reg(Reg.A));
+            Alu.RotDir rotDir = in.rotDir;
+            int result = rotate(rotDir, reg(Reg.A));
             setRegFromAlu(Reg.A, result);
             combineAluFlags(result, FlagSrc.V0, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
         } break;
         case ROTA: {
-            Alu.RotDir rotDir = extractRotateDirection(opcode);
-            int result = Alu.rotate(rotDir, reg(Reg.A), getC());
+            Alu.RotDir rotDir = in.rotDir;
+            int result = rotate(rotDir, reg(Reg.A), getC());
             setRegFromAlu(Reg.A, result);
             combineAluFlags(result, FlagSrc.V0, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
         } break;
         case ROTC_R8: {
-            Alu.RotDir rotDir = extractRotateDirection(opcode);
-            Reg opcodeReg = extractReg(opcode, 0);
-            int result = Alu.rotate(rotDir, reg(opcodeReg));
+            Alu.RotDir rotDir = in.rotDir;
+            Reg opcodeReg = in.reg0;
+            int result = rotate(rotDir, reg(opcodeReg));
             setRegFromAlu(opcodeReg, result);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
         } break;
         case ROT_R8: {
-            Alu.RotDir rotDir = extractRotateDirection(opcode);
-            Reg opcodeReg = extractReg(opcode, 0);
-            int result = Alu.rotate(rotDir, reg(opcodeReg), getC());
+            Alu.RotDir rotDir = in.rotDir;
+            Reg opcodeReg = in.reg0;
+            int result = rotate(rotDir, reg(opcodeReg), getC());
             setRegFromAlu(opcodeReg, result);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
         } break;
         case ROTC_HLR: {
-            Alu.RotDir rotDir = extractRotateDirection(opcode);
-            int result = Alu.rotate(rotDir, read8AtHl());
+            Alu.RotDir rotDir = in.rotDir;
+            int result = rotate(rotDir, read8AtHl());
             write8AtHl(Alu.unpackValue(result));
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
         } break;
         case ROT_HLR: {
-            Alu.RotDir rotDir = extractRotateDirection(opcode);
-            int result = Alu.rotate(rotDir, read8AtHl(), getC());
+            Alu.RotDir rotDir = in.rotDir;
+            int result = rotate(rotDir, read8AtHl(), getC());
             write8AtHl(Alu.unpackValue(result));
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
         } break;
         case SWAP_R8: {
-            Reg opcodeReg = extractReg(opcode, 0);
-            int result = Alu.swap(reg(opcodeReg));
+            Reg opcodeReg = in.reg0;
+            int result = swap(reg(opcodeReg));
             setRegFromAlu(opcodeReg, result);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.V0);
         } break;
         case SWAP_HLR: {
-            int result = Alu.swap(read8AtHl());
+            int result = swap(read8AtHl());
             write8AtHl(Alu.unpackValue(result));
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.V0);
         } break;
         case SLA_R8: {
-            Reg opcodeReg = extractReg(opcode, 0);
-            int result = Alu.shiftLeft(reg(opcodeReg));
+            Reg opcodeReg = in.reg0;
+            int result = shiftLeft(reg(opcodeReg));
             setRegFromAlu(opcodeReg, result);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
         } break;
         case SRA_R8: {
-            Reg opcodeReg = extractReg(opcode, 0);
-            int result = Alu.shiftRightA(reg(opcodeReg));
+            Reg opcodeReg = in.reg0;
+            int result = shiftRightA(reg(opcodeReg));
             setRegFromAlu(opcodeReg, result);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
         } break;
         case SRL_R8: {
-            Reg opcodeReg = extractReg(opcode, 0);
-            int result = Alu.shiftRightL(reg(opcodeReg));
+            Reg opcodeReg = in.reg0;
+            int result = shiftRightL(reg(opcodeReg));
             setRegFromAlu(opcodeReg, result);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
         } break;
         case SLA_HLR: {
-            int result = Alu.shiftLeft(read8AtHl());
+            int result = shiftLeft(read8AtHl());
             write8AtHl(Alu.unpackValue(result));
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
         } break;
         case SRA_HLR: {
-            int result = Alu.shiftRightA(read8AtHl());
+            int result = shiftRightA(read8AtHl());
             write8AtHl(Alu.unpackValue(result));
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
         } break;
         case SRL_HLR: {
-            int result = Alu.shiftRightL(read8AtHl());
+            int result = shiftRightL(read8AtHl());
             write8AtHl(Alu.unpackValue(result));
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
         } break;
 
         // Bit test and set
         case BIT_U3_R8: {
-            Reg opcodeReg = extractReg(opcode, 0);
-            int result = Alu.testBit(reg(opcodeReg), extractBitIndex(opcode));
+            Reg opcodeReg = in.reg0;
+            int result = Alu.testBit(reg(opcodeReg), in.bitIndex);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V1, FlagSrc.CPU);
         } break;
         case BIT_U3_HLR: {
-            int result = Alu.testBit(read8AtHl(), extractBitIndex(opcode));
+            int result = Alu.testBit(read8AtHl(), in.bitIndex);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.V0, FlagSrc.V1, FlagSrc.CPU);
         } break;
         case CHG_U3_R8: {
-            Reg opcodeReg = extractReg(opcode, 0);
-            int result = Bits.set(reg(opcodeReg), extractBitIndex(opcode), extractBitValue(opcode));
+            Reg opcodeReg = in.reg0;
+            int result = Bits.set(reg(opcodeReg), in.bitIndex, in.bitValue);
             setReg(opcodeReg, result);
         } break;
         case CHG_U3_HLR: {
-            int result = Bits.set(read8AtHl(), extractBitIndex(opcode), extractBitValue(opcode));
+            int result = Bits.set(read8AtHl(), in.bitIndex, in.bitValue);
             write8AtHl(result);
         } break;
 
         // Misc. ALU
         case DAA: {
             boolean n = getFlag(Alu.Flag.N), h = getFlag(Alu.Flag.H), c = getC();
-            int result = Alu.bcdAdjust(reg(Reg.A), n, h, c);
+            int result = bcdAdjust(reg(Reg.A), n, h, c);
             setRegFromAlu(Reg.A, result);
             combineAluFlags(result, FlagSrc.ALU, FlagSrc.CPU, FlagSrc.V0, FlagSrc.ALU);
         } break;
         case SCCF: {
-            boolean complement = extractCarry(opcode);
+            boolean complement = in.carry;
             boolean carry = !complement || !getC();
             combineAluFlags(0, FlagSrc.CPU, FlagSrc.V0, FlagSrc.V0, carry ? FlagSrc.V1 : FlagSrc.V0);
         } break;
@@ -533,23 +753,21 @@ public final class Cpu implements Component, Clocked {
             setPC(reg16(Reg16.HL));
         } break;
         case JP_N16: {
-            setPC(read16AfterOpcode());
+            setPC(in.immediate);
         } break;
         case JP_CC_N16: {
-            if (evaluateCondition(opcode)) {
-                setPC(read16AfterOpcode());
+            if (evaluateCondition(in)) {
+                setPC(in.immediate);
             } else {
                 conditionFailed = true;
             }
         } break;
         case JR_E8: {
-            int e8 = Bits.signExtend8(read8AfterOpcode());
-            setPC(PC + opcode.totalBytes + e8);
+            setPC(in.immediate);
         } break;
         case JR_CC_E8: {
-            if (evaluateCondition(opcode)) {
-                int e8 = Bits.signExtend8(read8AfterOpcode());
-                setPC(PC + opcode.totalBytes + e8);
+            if (evaluateCondition(in)) {
+                setPC(in.immediate);
             } else {
                 conditionFailed = true;
             }
@@ -557,27 +775,26 @@ public final class Cpu implements Component, Clocked {
 
         // Calls and returns
         case CALL_N16: {
-            push16(clip16(PC + opcode.totalBytes));
-            setPC(read16AfterOpcode());
+            push16(in.nextPC);
+            setPC(in.immediate);
         } break;
         case CALL_CC_N16: {
-            if (evaluateCondition(opcode)) {
-                push16(clip16(PC + opcode.totalBytes));
-                setPC(read16AfterOpcode());
+            if (evaluateCondition(in)) {
+                push16(in.nextPC);
+                setPC(in.immediate);
             } else {
                 conditionFailed = true;
             }
         } break;
         case RST_U3: {
-            push16(clip16(PC + opcode.totalBytes));
-            int u3 = Bits.extract(opcode.encoding, 3, 3);
-            setPC(AddressMap.RESETS[u3]);
+            push16(in.nextPC);
+            setPC(in.immediate);
         } break;
         case RET: {
             setPC(pop16());
         } break;
         case RET_CC: {
-            if (evaluateCondition(opcode)) {
+            if (evaluateCondition(in)) {
                 setPC(pop16());
             } else {
                 conditionFailed = true;
@@ -586,7 +803,7 @@ public final class Cpu implements Component, Clocked {
 
         // Interrupts
         case EDI: {
-            IME = Bits.test(opcode.encoding, 3);
+            IME = in.enableInterrupts;
         } break;
         case RETI: {
             IME = true;
@@ -635,30 +852,6 @@ public final class Cpu implements Component, Clocked {
         write8(clip16(address + 1), Bits.extract(v, 8, 8));
     }
 
-    private int readOpcode() {
-        return read8(PC);
-    }
-
-    private int readOpcodeAfterPrefix() {
-        return read8(clip16(PC + 1));
-    }
-
-    private boolean isOpcodePrefixed() {
-        return readOpcode() == OPCODE_PREFIX;
-    }
-
-    private int addressAfterOpcode() {
-        return clip16(PC + 1 + (isOpcodePrefixed() ? 1 : 0));
-    }
-
-    private int read8AfterOpcode() {
-        return read8(addressAfterOpcode());
-    }
-
-    private int read16AfterOpcode() {
-        return read16(addressAfterOpcode());
-    }
-
     private void push16(int v) {
         SP = clip16(SP - 2);
         write16(SP, v);
@@ -671,56 +864,52 @@ public final class Cpu implements Component, Clocked {
     }
 
     private int reg(Reg r) {
-        return regFile.get(r);
-    }
-
-    /** Splits a 16-bit register pair into two registers */
-    private Reg[] regPair(Reg16 r) {
+        if (r == Reg.F && flagsPending) storePendingFlags();
         int index = r.index();
-        return new Reg[] { regValues[index * 2], regValues[index * 2 + 1] };
+        int pair = regPairs[index / 2];
+        return (index % 2 == 0) ? pair >>> 8 : pair & 0xFF;
     }
 
     private int reg16(Reg16 r) {
-        Reg[] pair = regPair(r);
-        return Bits.make16(
-                reg(pair[0]),
-                reg(pair[1])
-        );
+        if (r == Reg16.AF && flagsPending) storePendingFlags();
+        return regPairs[r.index()];
     }
 
     private int reg16SP(Reg16 r) {
-        if (r.equals(Reg16.AF)) {
+        if (r == Reg16.AF) {
             return SP;
         } else {
             return reg16(r);
         }
     }
 
+    /** Values are 8-bit by construction, so they aren't checked again here */
     private void setReg(Reg r, int newV) {
-        Preconditions.checkBits8(newV);
-        regFile.set(r, newV);
+        int index = r.index();
+        int pair = regPairs[index / 2];
+        regPairs[index / 2] = (index % 2 == 0) ?
+                (newV << 8) | (pair & 0xFF) :
+                (pair & 0xFF00) | newV;
     }
 
+    /** Values are 16-bit by construction, so they aren't checked again here */
     private void setReg16(Reg16 r, int newV) {
-        Preconditions.checkBits16(newV);
-        Reg[] pair = regPair(r);
-
-        if (r.equals(Reg16.AF)) {
+        if (r == Reg16.AF) {
             newV = newV & -1 << 4;
+            flagsPending = false;
         }
-        setReg(pair[0], Bits.extract(newV, 8, 8));
-        setReg(pair[1], Bits.extract(newV, 0, 8));
+        regPairs[r.index()] = newV;
     }
 
     private void setReg16SP(Reg16 r, int newV) {
-        if (r.equals(Reg16.AF)) {
+        if (r == Reg16.AF) {
             SP = newV;
         } else {
             setReg16(r, newV);
         }
     }
 
-    private Reg extractReg(Opcode opcode, int startBit) {
+    private static Reg extractReg(Opcode opcode, int startBit) {
         int identity = Bits.extract(opcode.encoding, startBit, 3);
         switch (identity) {
             case 0b000: return Reg.B;
@@ -734,7 +923,7 @@ public final class Cpu implements Component, Clocked {
         }
     }
 
-    private Reg16 extractReg16(Opcode opcode) {
+    private static Reg16 extractReg16(Opcode opcode) {
         int identity = Bits.extract(opcode.encoding, 4, 2);
         switch (identity) {
             case 0b00: return Reg16.BC;
@@ -745,10 +934,46 @@ public final class Cpu implements Component, Clocked {
         }
     }
 
-    private int extractHlIncrement(Opcode opcode) {
+    private static int extractHlIncrement(Opcode opcode) {
         return Bits.test(opcode.encoding, 4) ? -1 : 1;
     }
 
+    private int add(int l, int r, boolean c0) {
+        return aluTables ? AluTables.add(l, r, c0) : Alu.add(l, r, c0);
+    }
+
+    private int sub(int l, int r, boolean b0) {
+        return aluTables ? AluTables.sub(l, r, b0) : Alu.sub(l, r, b0);
+    }
+
+    private int bcdAdjust(int v, boolean n, boolean h, boolean c) {
+        return aluTables ? AluTables.bcdAdjust(v, n, h, c) : Alu.bcdAdjust(v, n, h, c);
+    }
+
+    private int rotate(Alu.RotDir d, int v) {
+        return aluTables ? AluTables.rotate(d, v) : Alu.rotate(d, v);
+    }
+
+    private int rotate(Alu.RotDir d, int v, boolean c) {
+        return aluTables ? AluTables.rotate(d, v, c) : Alu.rotate(d, v, c);
+    }
+
+    private int shiftLeft(int v) {
+        return aluTables ? AluTables.shiftLeft(v) : Alu.shiftLeft(v);
+    }
+
+    private int shiftRightA(int v) {
+        return aluTables ? AluTables.shiftRightA(v) : Alu.shiftRightA(v);
+    }
+
+    private int shiftRightL(int v) {
+        return aluTables ? AluTables.shiftRightL(v) : Alu.shiftRightL(v);
+    }
+
+    private int swap(int v) {
+        return aluTables ? AluTables.swap(v) : Alu.swap(v);
+    }
+
     private void setRegFromAlu(Reg r, int valueFlags) {
         setReg(r, Alu.unpackValue(valueFlags));
     }
@@ -767,8 +992,30 @@ public final class Cpu implements Component, Clocked {
         }
     }
 
-    /** Combines the flags from Alu and Cpu given sources, and stores into F */
+    /**
+     * Combines the flags from Alu and Cpu given sources, and stores into F,
+     * or only remembers them in lazy mode if none comes from the Cpu
+     */
     private void combineAluFlags(int valueFlags, FlagSrc z, FlagSrc n, FlagSrc h, FlagSrc c) {
+        if (lazyFlags && z != FlagSrc.CPU && n != FlagSrc.CPU
+                && h != FlagSrc.CPU && c != FlagSrc.CPU) {
+            flagsPending = true;
+            pendingValueFlags = valueFlags;
+            pendingZ = z;
+            pendingN = n;
+            pendingH = h;
+            pendingC = c;
+        } else {
+            storeFlags(valueFlags, z, n, h, c);
+        }
+    }
+
+    private void storePendingFlags() {
+        flagsPending = false;
+        storeFlags(pendingValueFlags, pendingZ, pendingN, pendingH, pendingC);
+    }
+
+    private void storeFlags(int valueFlags, FlagSrc z, FlagSrc n, FlagSrc h, FlagSrc c) {
         int aluFlags = Alu.unpackFlags(valueFlags);
         int cpuFlags = reg(Reg.F);
         setFlags(Alu.maskZNHC(
@@ -779,15 +1026,15 @@ public final class Cpu implements Component, Clocked {
         ));
     }
 
-    private Alu.RotDir extractRotateDirection(Opcode opcode) {
+    private static Alu.RotDir extractRotateDirection(Opcode opcode) {
         return Bits.test(opcode.encoding, 3) ? Alu.RotDir.RIGHT : Alu.RotDir.LEFT;
     }
 
-    private int extractBitIndex(Opcode opcode) {
+    private static int extractBitIndex(Opcode opcode) {
         return Bits.extract(opcode.encoding, 3, 3);
     }
 
-    private boolean extractBitValue(Opcode opcode) {
+    private static boolean extractBitValue(Opcode opcode) {
         return Bits.test(opcode.encoding, 6);
     }
 
@@ -799,54 +1046,177 @@ public final class Cpu implements Component, Clocked {
         return getFlag(Alu.Flag.C);
     }
 
-    private boolean extractCarry(Opcode opcode) {
+    private static boolean extractCarry(Opcode opcode) {
         return Bits.test(opcode.encoding, 3);
     }
 
+    private static boolean extractEnableInterrupts(Opcode opcode) {
+        return opcode.family == Opcode.Family.EDI && Bits.test(opcode.encoding, 3);
+    }
+
     private void setPC(int address) {
         PC = clip16(address);
         alteredPC = true;
     }
 
-    private boolean evaluateCondition(Opcode opcode) {
-        int condition = Bits.extract(opcode.encoding, 3, 2);
-        switch (condition) {
-            case 0b00: {
-                return !getFlag(Alu.Flag.Z);
-            }
-            case 0b01: {
-                return getFlag(Alu.Flag.Z);
-            }
-            case 0b10: {
-                return !getC();
-            }
-            case 0b11: {
-                return getC();
-            }
-            default: return false;
-        }
+    private static Alu.Flag extractConditionFlag(Opcode opcode) {
+        return Bits.test(opcode.encoding, 4) ? Alu.Flag.C : Alu.Flag.Z;
     }
 
-    private Interrupt getCurrentInterrupt() {
-        for (Interrupt interrupt : Interrupt.values()) {
-            int index = interrupt.index();
-            if (Bits.test(IF, index) && Bits.test(IE, index)) {
-                return interrupt;
-            }
-        }
-        return null;
+    private static boolean extractConditionValue(Opcode opcode) {
+        return Bits.test(opcode.encoding, 3);
+    }
+
+    private boolean evaluateCondition(Instruction in) {
+        return getFlag(in.conditionFlag) == in.conditionValue;
     }
 
     private boolean hasCurrentInterrupt() {
-        return getCurrentInterrupt() != null;
+        return interrupts.hasPending();
     }
 
     private void handleInterrupt(Interrupt interrupt) {
         IME = false;
-        IF = Bits.set(IF, interrupt.index(), false);
+        interrupts.acknowledge(interrupt);
         push16(PC);
         setPC(AddressMap.INTERRUPTS[interrupt.index()]);
         nextNonIdleCycle += 5;
     }
 
+    /** Only instructions read from memory can be cached */
+    private static boolean isCacheable(int address) {
+        return address < AddressMap.ECHO_RAM_START
+                || isWithinHighRamBounds(address);
+    }
+
+    /**
+     * Instruction
+     *
+     * An instruction decoded from memory, whose operands are extracted from
+     * the opcode once and for all. Only the latch of the Cpu is ever loaded
+     * again, cached instructions never change
+     */
+    static final class Instruction {
+
+        Opcode.Family family;
+        int cycles, additionalCycles;
+        int nextPC;
+
+        /** Immediate value, or target address of relative jumps and resets */
+        int immediate;
+
+        /** Registers encoded from bit 0 and from bit 3 of the opcode */
+        Reg reg0, reg3;
+        Reg16 reg16;
+        int hlIncrement;
+        boolean carry, editHl;
+        Alu.RotDir rotDir;
+        int bitIndex;
+        boolean bitValue;
+        Alu.Flag conditionFlag;
+        boolean conditionValue;
+        boolean enableInterrupts;
+
+        /** Memory the instruction was decoded from */
+        private int address, lastAddress;
+        private int firstPageModifications, lastPageModifications;
+
+        /** Decodes an instruction into this one, erasing its previous content */
+        void load(int address, Opcode opcode, int immediate, Bus bus) {
+            this.family = opcode.family;
+            this.cycles = opcode.cycles;
+            this.additionalCycles = opcode.additionalCycles;
+            this.nextPC = Bits.clip(16, address + opcode.totalBytes);
+
+            switch (opcode.family) {
+                case JR_E8:
+                case JR_CC_E8:
+                    immediate = Bits.clip(16, nextPC + Bits.signExtend8(immediate));
+                    break;
+                case LD_HLSP_S8:
+                    immediate = Bits.clip(16, Bits.signExtend8(immediate));
+                    break;
+                case RST_U3:
+                    immediate = AddressMap.RESETS[Bits.extract(opcode.encoding, 3, 3)];
+                    break;
+            }
+            this.immediate = immediate;
+
+            this.reg0 = extractReg(opcode, 0);
+            this.reg3 = extractReg(opcode, 3);
+            this.reg16 = extractReg16(opcode);
+            this.hlIncrement = extractHlIncrement(opcode);
+            this.carry = extractCarry(opcode);
+            this.editHl = Bits.test(opcode.encoding, 4);
+            this.rotDir = extractRotateDirection(opcode);
+            this.bitIndex = extractBitIndex(opcode);
+            this.bitValue = extractBitValue(opcode);
+            this.conditionFlag = extractConditionFlag(opcode);
+            this.conditionValue = extractConditionValue(opcode);
+            this.enableInterrupts = extractEnableInterrupts(opcode);
+
+            this.address = address;
+            this.lastAddress = Bits.clip(16, address + opcode.totalBytes - 1);
+            this.firstPageModifications = bus.modificationCount(address);
+            this.lastPageModifications = bus.modificationCount(lastAddress);
+        }
+
+        boolean isCacheable() {
+            return Cpu.isCacheable(address) && Cpu.isCacheable(lastAddress);
+        }
+
+        /** @return true if the memory of the instruction hasn't been modified */
+        boolean isUpToDate(Bus bus) {
+            return bus.modificationCount(address) == firstPageModifications
+                    && bus.modificationCount(lastAddress) == lastPageModifications;
+        }
+
+    }
+
+    /**
+     * Block
+     *
+     * A sequence of decoded instructions that are always executed one after
+     * the other, unless an interrupt occurs: only the last one can jump.
+     * A block spans at most two pages, so it is up to date as long as its
+     * first and last instructions are. It is compiled to bytecode once and
+     * for all, see {@link BlockCompiler}
+     */
+    private static final class Block {
+
+        private final Instruction[] instructions;
+        private final CompiledBlock code;
+
+        Block(List<Instruction> instructions, boolean aluTables) {
+            this.instructions = instructions.toArray(new Instruction[0]);
+            this.code = BlockCompiler.compile(this.instructions, aluTables,
+                    MethodHandles.lookup());
+        }
+
+        boolean isUpToDate(Bus bus) {
+            return instructions[0].isUpToDate(bus)
+                    && instructions[instructions.length - 1].isUpToDate(bus);
+        }
+
+    }
+
+    /**
+     * CompiledBlock
+     *
+     * The code generated for a block, see {@link BlockCompiler}
+     */
+    interface CompiledBlock {
+
+        /**
+         * Runs the instructions of the block, for as long as they can run
+         * right away, and leaves PC at the next instruction to run
+         * @param cpu the processor to run the block on
+         * @param block the block, which holds the instructions that aren't
+         * translated
+         * @return true if and only if the last instruction jumped
+         */
+        boolean run(Cpu cpu, Block block);
+
+    }
+
 }
@@ -0,0 +1,108 @@
+package ch.epfl.gameboj.component.cpu;
+
+import ch.epfl.gameboj.bits.Bits;
+import ch.epfl.gameboj.component.cpu.Cpu.Interrupt;
+
+import java.util.Objects;
+
+/**
+ * InterruptController
+ *
+ * Holds the IE and IF registers of the Cpu, along with the mask of pending
+ * interrupts (enabled and requested), which is kept up to date as they
+ * change. A listener is notified whenever an interrupt becomes pending
+ * while none was
+ *
+ * @author Ulysse Ramage (282300)
+ */
+final class InterruptController {
+
+    private static final Interrupt[] INTERRUPTS = Interrupt.values();
+    private static final int INTERRUPTS_MASK = (1 << INTERRUPTS.length) - 1;
+
+    private final Runnable pendingListener;
+    private int IE, IF;
+    private int pending;
+
+    /**
+     * Creates a new InterruptController
+     * @param pendingListener the action to run when an interrupt becomes
+     * pending while none was
+     * @throws NullPointerException if {@code pendingListener} is null
+     */
+    InterruptController(Runnable pendingListener) {
+        this.pendingListener = Objects.requireNonNull(pendingListener);
+    }
+
+    /**
+     * @return the value of register IE
+     */
+    int enabled() {
+        return IE;
+    }
+
+    /**
+     * @return the value of register IF
+     */
+    int requested() {
+        return IF;
+    }
+
+    /**
+     * Sets the value of register IE
+     * @param IE the new 8-bit value
+     */
+    void setEnabled(int IE) {
+        this.IE = IE;
+        update();
+    }
+
+    /**
+     * Sets the value of register IF
+     * @param IF the new 8-bit value
+     */
+    void setRequested(int IF) {
+        this.IF = IF;
+        update();
+    }
+
+    /**
+     * Raises an interrupt (sets the corresponding bit to 1 in register IF)
+     * @param i the interrupt to raise
+     */
+    void request(Interrupt i) {
+        setRequested(Bits.set(IF, i.index(), true));
+    }
+
+    /**
+     * Lowers an interrupt that is being handled (sets the corresponding bit
+     * to 0 in register IF)
+     * @param i the interrupt to lower
+     */
+    void acknowledge(Interrupt i) {
+        setRequested(Bits.set(IF, i.index(), false));
+    }
+
+    /**
+     * @return true if and only if an interrupt is both enabled and requested
+     */
+    boolean hasPending() {
+        return pending != 0;
+    }
+
+    /**
+     * @return the pending interrupt with the highest priority (the lowest
+     * index), or null if there is none
+     */
+    Interrupt highestPending() {
+        return (pending == 0) ? null : INTERRUPTS[Integer.numberOfTrailingZeros(pending)];
+    }
+
+    private void update() {
+        boolean wasPending = (pending != 0);
+        pending = IE & IF & INTERRUPTS_MASK;
+        if (!wasPending && pending != 0)
+            pendingListener.run();
+    }
+
+}
@@ -1,15 +1,22 @@
 package ch.epfl.gameboj.component.lcd;
 
 import ch.epfl.gameboj.AddressMap;
+import ch.epfl.gameboj.Bus;
 import ch.epfl.gameboj.Preconditions;
+import ch.epfl.gameboj.Scheduler;
 import ch.epfl.gameboj.bits.Bit;
 import ch.epfl.gameboj.bits.Bits;
 import ch.epfl.gameboj.component.Clocked;
 import ch.epfl.gameboj.component.Component;
 import ch.epfl.gameboj.component.cpu.Cpu;
 import ch.epfl.gameboj.component.memory.Ram;
+import ch.epfl.gameboj.component.memory.RamController;
 
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * LcdController
@@ -33,10 +40,51 @@ public final class LcdController implements Component, Clocked {
             TILE_SIZE = 8,
             IMAGE_WIDTH = 32,
             IMAGE_SIZE = IMAGE_WIDTH * TILE_SIZE;
+    private static final int DMA_CYCLES = 160;
+    private static final int
+            TILE_COUNT = 384,
+            TILE_BYTES = TILE_SIZE * 2,
+            TILE_DATA_PAGES = TILE_COUNT * TILE_BYTES / Bus.PAGE_SIZE,
+            VIDEO_RAM_PAGES = AddressMap.VIDEO_RAM_SIZE / Bus.PAGE_SIZE;
+    private static final int BACKGROUND_CONFIG_MASK =
+            ConfigBits.BG_AREA.mask() | ConfigBits.TILE_SOURCE.mask();
 
     private final Cpu cpu;
+    private Bus bus;
+    private Scheduler scheduler;
 
     private final Ram videoRam = new Ram(AddressMap.VIDEO_RAM_SIZE);
+    private final RamController videoRamController =
+            new RamController(videoRam, AddressMap.VIDEO_RAM_START);
+    private final Ram oam = new Ram(AddressMap.OAM_RAM_SIZE);
+    private final RamController oamController =
+            new RamController(oam, AddressMap.OAM_START);
+
+    /** Lines of each tile, decoded with their bits reversed (msb << 8 | lsb) */
+    private final int[] tileLines = new int[TILE_COUNT * TILE_SIZE];
+    /** Modification count of each page of the video ram when last checked */
+    private final int[] videoRamPageModifications = new int[VIDEO_RAM_PAGES];
+    /** Pages of the video ram written to other than through the bus */
+    private int staleVideoRamPages = -1;
+
+    /** Rows of the background with their colors mapped */
+    private final LcdImageLine[] backgroundRows;
+    private final boolean[] dirtyBackgroundRows = new boolean[IMAGE_SIZE];
+    /** Pages of the video ram each row of the background was read from */
+    private final int[] backgroundRowPages = new int[IMAGE_SIZE];
+
+    /** Whether lines are only drawn when an image is requested */
+    private final boolean headless;
+
+    /** Frame buffer: the colors of the background and of the frames, per pixel */
+    private final boolean frameBuffered;
+    private final byte[] backgroundPixels;
+    private byte[] nextFrame, currentFrame;
+    private boolean hasCurrentFrame;
+
+    /** Holds the values being copied by a DMA transfer */
+    private final byte[] dmaBuffer = new byte[AddressMap.OAM_RAM_SIZE];
+    private long dmaEndCycle = Long.MAX_VALUE;
 
     private LcdImage.Builder nextImageBuilder;
     private LcdImage currentImage;
@@ -57,13 +105,41 @@ public final class LcdController implements Component, Clocked {
         BACKGROUND, WINDOW
     }
 
+    /** Rendering options */
+    public enum Option {
+        /**
+         * Draws the lines into a preallocated frame buffer, one byte per
+         * pixel, instead of building an {@link LcdImage} per frame. Drawing
+         * a frame allocates nothing, and {@link #currentImage()} builds an
+         * image of the last frame only when called
+         */
+        FRAME_BUFFER,
+        /**
+         * Never draws lines while the lcd controller runs, and keeps only
+         * its timing, registers and interrupts. {@link #currentImage()}
+         * draws the whole image from the video ram when called. Takes
+         * precedence over {@link #FRAME_BUFFER}
+         */
+        HEADLESS
+    }
+
 
     /**
-     * Creates a new LcdController with the given cpu
+     * Creates a new LcdController with the given cpu and rendering options
      * @param cpu the GameBoy cpu
+     * @param options the options to enable
      */
-    public LcdController(Cpu cpu) {
+    public LcdController(Cpu cpu, Option... options) {
         this.cpu = cpu;
+        Set<Option> enabled = EnumSet.noneOf(Option.class);
+        enabled.addAll(Arrays.asList(options));
+        headless = enabled.contains(Option.HEADLESS);
+        frameBuffered = !headless && enabled.contains(Option.FRAME_BUFFER);
+        backgroundRows = frameBuffered ? null : new LcdImageLine[IMAGE_SIZE];
+        backgroundPixels = frameBuffered ? new byte[IMAGE_SIZE * IMAGE_SIZE] : null;
+        nextFrame = frameBuffered ? new byte[LCD_WIDTH * LCD_HEIGHT] : null;
+        currentFrame = frameBuffered ? new byte[LCD_WIDTH * LCD_HEIGHT] : null;
+        clearBackgroundRows();
     }
 
     /**
@@ -73,24 +149,14 @@ public final class LcdController implements Component, Clocked {
     public int read(int address) {
         Preconditions.checkBits16(address);
         if (isWithinRegsBounds(address)) {
-            switch (address - AddressMap.REGS_LCDC_START) {
-                case 0: return LCDC;
-                case 1: return STAT;
-                case 2: return SCY;
-                case 3: return SCX;
-                case 4: return LY;
-                case 5: return LYC;
-                case 6: return DMA;
-                case 7: return BGP;
-                case 8: return OBP0;
-                case 9: return OBP1;
-                case 10: return WY;
-                case 11: return WX;
-            }
+            return readRegister(address - AddressMap.REGS_LCDC_START);
         }
         if (isWithinVideoRamBounds(address)) {
             return videoRam.read(address - AddressMap.VIDEO_RAM_START);
         }
+        if (isWithinOamBounds(address)) {
+            return oam.read(address - AddressMap.OAM_START);
+        }
         return Component.NO_DATA;
     }
 
@@ -102,46 +168,153 @@ public final class LcdController implements Component, Clocked {
         Preconditions.checkBits16(address);
         Preconditions.checkBits8(data);
         if (isWithinRegsBounds(address)) {
-            switch (address - AddressMap.REGS_LCDC_START) {
-                case 0: {
-                    boolean deactivated = Bits.test(LCDC, ConfigBits.LCD_STATUS)
-                            && !Bits.test(data, ConfigBits.LCD_STATUS);
-                    LCDC = data;
-                    if (deactivated) {
-                        STAT = STAT & (-1 << 2);
-                        LY = 0;
-                        nextNonIdleCycle = Long.MAX_VALUE;
-                    }
-                } break;
-                case 1: {
-                    int mask = -1 << 3;
-                    STAT = (data & mask) | (STAT & ~mask);
-                } break;
-                case 2: SCY = data; break;
-                case 3: SCX = data; break;
-                case 4: break;
-                case 5: {
-                    LYC = data;
-                    check_LYC_EQ_LY();
-                } break;
-                case 6: DMA = data; break;
-                case 7: BGP = data; break;
-                case 8: OBP0 = data; break;
-                case 9: OBP1 = data; break;
-                case 10: WY = data; break;
-                case 11: WX = data; break;
-            }
+            writeRegister(address - AddressMap.REGS_LCDC_START, data);
         }
         if (isWithinVideoRamBounds(address)) {
             videoRam.write(address - AddressMap.VIDEO_RAM_START, data);
+            markVideoRamStale(address, address + 1);
+        }
+        if (isWithinOamBounds(address)) {
+            oam.write(address - AddressMap.OAM_START, data);
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * Copies the parts of the block within the video ram and the OAM at once.
+     * The registers aren't part of the block, as the bus reads them through
+     * their own handlers
+     */
+    @Override
+    public void readBlock(int address, byte[] dst, int offset, int length) {
+        Preconditions.checkBlock(address, dst, offset, length);
+        videoRamController.readBlock(address, dst, offset, length);
+        oamController.readBlock(address, dst, offset, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Copies the parts of the block within the video ram and the OAM at once.
+     * The registers aren't part of the block, as the bus writes them through
+     * their own handlers
+     */
+    @Override
+    public void writeBlock(int address, byte[] src, int offset, int length) {
+        Preconditions.checkBlock(address, src, offset, length);
+        videoRamController.writeBlock(address, src, offset, length);
+        markVideoRamStale(address, address + length);
+        oamController.writeBlock(address, src, offset, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Only attaches handlers to the lcd registers, and the video ram and the
+     * OAM as plain memory
+     */
+    @Override
+    public void attachTo(Bus bus) {
+        videoRamController.attachTo(bus);
+        oamController.attachTo(bus);
+        for (int i = 0; i < AddressMap.REGS_LCDC_END - AddressMap.REGS_LCDC_START; ++i) {
+            int index = i;
+            bus.attachRegister(AddressMap.REGS_LCDC_START + index,
+                    () -> readRegister(index), data -> writeRegister(index, data));
+        }
+        this.bus = bus;
+    }
+
+    private int readRegister(int index) {
+        switch (index) {
+            case 0: return LCDC;
+            case 1: return STAT;
+            case 2: return SCY;
+            case 3: return SCX;
+            case 4: return LY;
+            case 5: return LYC;
+            case 6: return DMA;
+            case 7: return BGP;
+            case 8: return OBP0;
+            case 9: return OBP1;
+            case 10: return WY;
+            case 11: return WX;
+            default: return Component.NO_DATA;
+        }
+    }
+
+    private void writeRegister(int index, int data) {
+        switch (index) {
+            case 0: {
+                boolean deactivated = Bits.test(LCDC, ConfigBits.LCD_STATUS)
+                        && !Bits.test(data, ConfigBits.LCD_STATUS);
+                if (((LCDC ^ data) & BACKGROUND_CONFIG_MASK) != 0)
+                    clearBackgroundRows();
+                LCDC = data;
+                if (deactivated) {
+                    STAT = STAT & (-1 << 2);
+                    LY = 0;
+                    nextNonIdleCycle = Long.MAX_VALUE;
+                }
+                if (scheduler != null)
+                    scheduler.reschedule(this);
+            } break;
+            case 1: {
+                int mask = -1 << 3;
+                STAT = (data & mask) | (STAT & ~mask);
+            } break;
+            case 2: SCY = data; break;
+            case 3: SCX = data; break;
+            case 4: break;
+            case 5: {
+                LYC = data;
+                check_LYC_EQ_LY();
+            } break;
+            case 6: {
+                DMA = data;
+                startDmaTransfer(data << 8);
+            } break;
+            case 7: {
+                if (BGP != data)
+                    clearBackgroundRows();
+                BGP = data;
+            } break;
+            case 8: OBP0 = data; break;
+            case 9: OBP1 = data; break;
+            case 10: WY = data; break;
+            case 11: WX = data; break;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void attachTo(Scheduler scheduler) {
+        Clocked.super.attachTo(scheduler);
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long nextEventCycle(long cycle) {
+        long nextLcdCycle = nextNonIdleCycle;
+        if (nextNonIdleCycle == Long.MAX_VALUE) {
+            nextLcdCycle = Bits.test(LCDC, ConfigBits.LCD_STATUS)
+                    ? cycle : Long.MAX_VALUE;
+        }
+        return Math.min(nextLcdCycle, dmaEndCycle);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void cycle(long cycle) {
+        if (cycle >= dmaEndCycle) {
+            dmaEndCycle = Long.MAX_VALUE;
+            bus.setMemoryBlocked(false);
+        }
         if (nextNonIdleCycle == Long.MAX_VALUE
                 && Bits.test(LCDC, ConfigBits.LCD_STATUS)) {
             nextNonIdleCycle = cycle;
@@ -154,12 +327,58 @@ public final class LcdController implements Component, Clocked {
 
     /**
      * @return the image currently displayed on screen (empty if it hasn't
-     * been drawn yet)
+     * been drawn yet). When headless, the image is drawn from the current
+     * content of the video ram and registers, if the lcd is on
      */
     public LcdImage currentImage() {
+        if (headless) {
+            return Bits.test(LCDC, ConfigBits.LCD_STATUS)
+                    ? drawImage() : EMPTY_IMAGE;
+        }
+        if (currentImage == null && hasCurrentFrame)
+            currentImage = imageOf(currentFrame);
         return (currentImage != null) ? currentImage : EMPTY_IMAGE;
     }
 
+    /**
+     * Copies the colors of the pixels of the image currently displayed on
+     * screen, straight from the frame buffer if there is one
+     * @see LcdImage#copyColors(byte[])
+     */
+    public void copyCurrentImage(byte[] dst) {
+        if (!frameBuffered) {
+            currentImage().copyColors(dst);
+            return;
+        }
+        Preconditions.checkArgument(dst.length >= currentFrame.length);
+        System.arraycopy(currentFrame, 0, dst, 0, currentFrame.length);
+    }
+
+    /**
+     * Copies the pixels of the image currently displayed on screen as ARGB
+     * values, straight from the frame buffer if there is one
+     * @see LcdImage#copyColors(int[], int[])
+     */
+    public void copyCurrentImage(int[] dst, int[] palette) {
+        if (!frameBuffered) {
+            currentImage().copyColors(dst, palette);
+            return;
+        }
+        Preconditions.checkArgument(dst.length >= currentFrame.length);
+        Preconditions.checkArgument(palette.length == LcdImage.COLORS);
+        for (int i = 0; i < currentFrame.length; ++i)
+            dst[i] = palette[currentFrame[i]];
+    }
+
+    /**
+     * Copies the pixels of the image currently displayed on screen straight
+     * into the data buffer of the given image
+     * @see LcdImage#copyColors(BufferedImage, int[])
+     */
+    public void copyCurrentImage(BufferedImage image, int[] palette) {
+        copyCurrentImage(LcdImage.pixelsOf(image, LCD_WIDTH, LCD_HEIGHT), palette);
+    }
+
     private boolean isWithinRegsBounds(int address) {
         return (AddressMap.REGS_LCDC_START <= address
                 && address < AddressMap.REGS_LCDC_END);
@@ -170,6 +389,29 @@ public final class LcdController implements Component, Clocked {
                 && address < AddressMap.VIDEO_RAM_END);
     }
 
+    private boolean isWithinOamBounds(int address) {
+        return (AddressMap.OAM_START <= address
+                && address < AddressMap.OAM_END);
+    }
+
+    /**
+     * Copies the whole OAM from the given source at once, then blocks the
+     * accesses to the memory of the bus for the duration of the transfer,
+     * until an event of the controller
+     */
+    private void startDmaTransfer(int sourceAddress) {
+        if (bus == null)
+            return;
+        bus.readBlock(sourceAddress, dmaBuffer, 0, dmaBuffer.length);
+        oam.writeBlock(0, dmaBuffer, 0, dmaBuffer.length);
+        bus.markModified(AddressMap.OAM_START, AddressMap.OAM_END);
+        if (scheduler != null) {
+            dmaEndCycle = scheduler.currentCycle() + DMA_CYCLES;
+            bus.setMemoryBlocked(true);
+            scheduler.reschedule(this);
+        }
+    }
+
     /** Simulates a cycle */
     private void reallyCycle(long cycle) {
         switch (getMode()) {
@@ -209,42 +451,141 @@ public final class LcdController implements Component, Clocked {
         nextNonIdleCycle += 20;
     }
 
-    private int readTileLine(int tileImageAddress, int lineIndex) {
-        int address = tileImageAddress + lineIndex * 2;
-        int msb = Bits.reverse8(read(address + 1));
-        int lsb = Bits.reverse8(read(address));
-        return msb << 8 | lsb;
+    /**
+     * Marks the pages of the video ram overlapping the given address range as
+     * stale, when they are written to other than through the bus
+     */
+    private void markVideoRamStale(int startAddress, int endAddress) {
+        int start = Math.max(startAddress - AddressMap.VIDEO_RAM_START, 0);
+        int end = Math.min(endAddress - AddressMap.VIDEO_RAM_START, AddressMap.VIDEO_RAM_SIZE);
+        for (int page = start / Bus.PAGE_SIZE; page * Bus.PAGE_SIZE < end; ++page) {
+            staleVideoRamPages |= 1 << page;
+        }
     }
 
-    private int getTileImageAddress(ImageSource source, int tileIndex) {
+    /**
+     * Decodes the pages of the tile data modified since they were last
+     * checked, and marks the rows of the background read from any modified
+     * page as dirty
+     */
+    private void updateVideoRam() {
+        int modifiedPages = staleVideoRamPages;
+        staleVideoRamPages = 0;
+        for (int page = 0; page < VIDEO_RAM_PAGES; ++page) {
+            int modifications = (bus != null)
+                    ? bus.modificationCount(AddressMap.VIDEO_RAM_START + page * Bus.PAGE_SIZE)
+                    : 0;
+            if (modifications != videoRamPageModifications[page]) {
+                videoRamPageModifications[page] = modifications;
+                modifiedPages |= 1 << page;
+            }
+        }
+        if (modifiedPages == 0)
+            return;
+        for (int page = 0; page < TILE_DATA_PAGES; ++page) {
+            if (Bits.test(modifiedPages, page)) {
+                int start = page * Bus.PAGE_SIZE;
+                for (int i = start; i < start + Bus.PAGE_SIZE; i += 2) {
+                    tileLines[i / 2] = Bits.reverse8(videoRam.read(i + 1)) << 8
+                            | Bits.reverse8(videoRam.read(i));
+                }
+            }
+        }
+        for (int row = 0; row < IMAGE_SIZE; ++row) {
+            if ((backgroundRowPages[row] & modifiedPages) != 0)
+                dirtyBackgroundRows[row] = true;
+        }
+    }
+
+    private void clearBackgroundRows() {
+        Arrays.fill(dirtyBackgroundRows, true);
+    }
+
+    /** @return the offset in the video ram of the tile map of the background or window */
+    private int getTileMapStart(ImageSource source) {
         boolean rangeBit;
         switch (source) {
             case BACKGROUND: rangeBit = Bits.test(LCDC, ConfigBits.BG_AREA); break;
             case WINDOW: rangeBit = Bits.test(LCDC, ConfigBits.WIN_AREA); break;
             default: throw new IllegalArgumentException();
         }
-        int tileAddress = read(
-                AddressMap.BG_DISPLAY_DATA[rangeBit ? 1 : 0] + tileIndex
-        );
-        boolean tileSourceBit = Bits.test(LCDC, ConfigBits.TILE_SOURCE);
-        if (!tileSourceBit) {
-            tileAddress = Bits.clip(8, tileAddress + 0x80);
+        return AddressMap.BG_DISPLAY_DATA[rangeBit ? 1 : 0] - AddressMap.VIDEO_RAM_START;
+    }
+
+    /** @return the index (from 0 to 383) of a tile of the background or window */
+    private int getTileIndex(ImageSource source, int tileIndex) {
+        int tile = videoRam.read(getTileMapStart(source) + tileIndex);
+        if (!Bits.test(LCDC, ConfigBits.TILE_SOURCE)) {
+            tile = 0x80 + Bits.clip(8, tile + 0x80);
         }
-        tileAddress *= TILE_SIZE * 2;
-        tileAddress += AddressMap.TILE_SOURCE[tileSourceBit ? 1 : 0];
-        return tileAddress;
+        return tile;
+    }
+
+    /**
+     * @return the row of the background at the given index with its colors
+     * mapped, read again only if it is dirty
+     */
+    private LcdImageLine getBackgroundRow(int lineIndex) {
+        if (dirtyBackgroundRows[lineIndex]) {
+            backgroundRows[lineIndex] =
+                    readImageLine(ImageSource.BACKGROUND, lineIndex).mapColors(BGP);
+            backgroundRowPages[lineIndex] = getBackgroundRowPages(lineIndex);
+            dirtyBackgroundRows[lineIndex] = false;
+        }
+        return backgroundRows[lineIndex];
+    }
+
+    /**
+     * @return the offset in {@link #backgroundPixels} of the row of the
+     * background at the given index, whose colors are mapped again only if
+     * it is dirty
+     */
+    private int getBackgroundPixels(int lineIndex) {
+        int offset = lineIndex * IMAGE_SIZE;
+        if (dirtyBackgroundRows[lineIndex]) {
+            int firstTile = lineIndex / TILE_SIZE * IMAGE_WIDTH;
+            for (int tileIndex = 0; tileIndex < IMAGE_WIDTH; ++tileIndex) {
+                int tileLine = tileLines[getTileIndex(ImageSource.BACKGROUND,
+                        firstTile + tileIndex) * TILE_SIZE + lineIndex % TILE_SIZE];
+                for (int x = 0; x < TILE_SIZE; ++x) {
+                    // Pixels of color 0 are transparent, hence drawn with color 0
+                    int color = getColor(tileLine, x);
+                    backgroundPixels[offset + tileIndex * TILE_SIZE + x] =
+                            (byte) ((color == 0) ? 0 : mapColor(color));
+                }
+            }
+            backgroundRowPages[lineIndex] = getBackgroundRowPages(lineIndex);
+            dirtyBackgroundRows[lineIndex] = false;
+        }
+        return offset;
+    }
+
+    /** @return the mask of the pages of the video ram a row of the background is read from */
+    private int getBackgroundRowPages(int lineIndex) {
+        int firstTile = lineIndex / TILE_SIZE * IMAGE_WIDTH;
+        int pages = 1 << (getTileMapStart(ImageSource.BACKGROUND) + firstTile) / Bus.PAGE_SIZE;
+        for (int tileIndex = 0; tileIndex < IMAGE_WIDTH; ++tileIndex) {
+            pages |= 1 << getTileIndex(ImageSource.BACKGROUND, firstTile + tileIndex)
+                    * TILE_BYTES / Bus.PAGE_SIZE;
+        }
+        return pages;
+    }
+
+    /** @return the color (from 0 to 3) of a pixel of a decoded tile line */
+    private static int getColor(int tileLine, int x) {
+        return (tileLine >> (8 + x) & 1) << 1 | (tileLine >> x & 1);
+    }
+
+    private int mapColor(int color) {
+        return Bits.extract(BGP, 2 * color, 2);
     }
 
     private LcdImageLine readImageLine(ImageSource source, int lineIndex) {
         LcdImageLine.Builder imageLineBuilder = new LcdImageLine.Builder(IMAGE_SIZE);
         for (int tileIndex = 0; tileIndex < IMAGE_WIDTH; ++tileIndex) {
-            int tileLine = readTileLine(
-                    getTileImageAddress(
-                            source,
-                            lineIndex / TILE_SIZE * IMAGE_WIDTH + tileIndex
-                    ),
-                    lineIndex % TILE_SIZE
-            );
+            int tileLine = tileLines[getTileIndex(source,
+                    lineIndex / TILE_SIZE * IMAGE_WIDTH + tileIndex) * TILE_SIZE
+                    + lineIndex % TILE_SIZE];
             imageLineBuilder.setBytes(
                     tileIndex,
                     Bits.extract(tileLine, 8, 8),
@@ -268,12 +609,20 @@ public final class LcdController implements Component, Clocked {
     }
 
     private void computeLine(int index) {
+        updateVideoRam();
+        if (frameBuffered) {
+            drawLine(index);
+        } else {
+            nextImageBuilder.setLine(index, buildLine(index));
+        }
+    }
+
+    private LcdImageLine buildLine(int index) {
         LcdImageLine line = new LcdImageLine.Builder(LCD_WIDTH).build();
         if (isBackgroundActive()) {
             line = line.below(
-                    readImageLine(ImageSource.BACKGROUND, (SCY + index) % IMAGE_SIZE)
+                    getBackgroundRow((SCY + index) % IMAGE_SIZE)
                             .extractWrapped(SCX, LCD_WIDTH)
-                            .mapColors(BGP)
             );
         }
         if (isWindowActive()) {
@@ -288,16 +637,84 @@ public final class LcdController implements Component, Clocked {
             //FIXME: am I sure I need the (if)?
             ++winY;
         }
-        nextImageBuilder.setLine(index, line);
+        return line;
+    }
+
+    /** @return an image of the whole screen, drawn at once */
+    private LcdImage drawImage() {
+        updateVideoRam();
+        int currentWinY = winY;
+        winY = 0;
+        LcdImage.Builder imageBuilder = new LcdImage.Builder(LCD_WIDTH, LCD_HEIGHT);
+        for (int y = 0; y < LCD_HEIGHT; ++y)
+            imageBuilder.setLine(y, buildLine(y));
+        winY = currentWinY;
+        return imageBuilder.build();
+    }
+
+    /** Draws a line into the frame buffer, like {@link #computeLine(int)} builds it */
+    private void drawLine(int index) {
+        int offset = index * LCD_WIDTH;
+        if (isBackgroundActive()) {
+            int rowOffset = getBackgroundPixels((SCY + index) % IMAGE_SIZE);
+            for (int x = 0; x < LCD_WIDTH; ++x)
+                nextFrame[offset + x] = backgroundPixels[rowOffset + (SCX + x) % IMAGE_SIZE];
+        } else {
+            Arrays.fill(nextFrame, offset, offset + LCD_WIDTH, (byte) 0);
+        }
+        if (isWindowActive()) {
+            int lineIndex = winY - WY;
+            if (lineIndex >= 0) {
+                int tileLine = 0;
+                for (int x = 0; WXP() + x < LCD_WIDTH; ++x) {
+                    if (x % TILE_SIZE == 0) {
+                        tileLine = tileLines[getTileIndex(ImageSource.WINDOW,
+                                lineIndex / TILE_SIZE * IMAGE_WIDTH + x / TILE_SIZE)
+                                * TILE_SIZE + lineIndex % TILE_SIZE];
+                    }
+                    nextFrame[offset + WXP() + x] =
+                            (byte) mapColor(getColor(tileLine, x % TILE_SIZE));
+                }
+            }
+            ++winY;
+        }
+    }
+
+    /** @return an image of the given frame */
+    private static LcdImage imageOf(byte[] frame) {
+        LcdImage.Builder imageBuilder = new LcdImage.Builder(LCD_WIDTH, LCD_HEIGHT);
+        for (int y = 0; y < LCD_HEIGHT; ++y) {
+            LcdImageLine.Builder lineBuilder = new LcdImageLine.Builder(LCD_WIDTH);
+            for (int i = 0; i < LCD_WIDTH / Byte.SIZE; ++i) {
+                int msb = 0, lsb = 0;
+                for (int x = 0; x < Byte.SIZE; ++x) {
+                    int color = frame[y * LCD_WIDTH + i * Byte.SIZE + x];
+                    msb |= (color >> 1) << x;
+                    lsb |= (color & 1) << x;
+                }
+                lineBuilder.setBytes(i, msb, lsb);
+            }
+            imageBuilder.setLine(y, lineBuilder.build());
+        }
+        return imageBuilder.build();
     }
 
     private void startDrawingImage() {
         winY = 0;
-        nextImageBuilder = new LcdImage.Builder(LCD_WIDTH, LCD_HEIGHT);
+        if (!frameBuffered)
+            nextImageBuilder = new LcdImage.Builder(LCD_WIDTH, LCD_HEIGHT);
     }
 
     private void finishDrawingImage() {
-        currentImage = nextImageBuilder.build();
+        if (frameBuffered) {
+            byte[] frame = currentFrame;
+            currentFrame = nextFrame;
+            nextFrame = frame;
+            hasCurrentFrame = true;
+            currentImage = null;
+        } else {
+            currentImage = nextImageBuilder.build();
+        }
     }
 
     private int getMode() {
@@ -326,6 +743,8 @@ public final class LcdController implements Component, Clocked {
     }
 
     private void handleModeDrawing(int mode) {
+        if (headless)
+            return;
         switch (mode) {
             case 1: {
                 finishDrawingImage();
@@ -364,7 +783,7 @@ public final class LcdController implements Component, Clocked {
     private void printBackgroundTileIndices() {
         for (int y = 0; y < IMAGE_WIDTH; ++y) {
             for (int x = 0; x < IMAGE_WIDTH; ++x) {
-                System.out.printf("%d ", getTileImageAddress(ImageSource.BACKGROUND, y * 32 + x));
+                System.out.printf("%d ", getTileIndex(ImageSource.BACKGROUND, y * 32 + x));
             }
             System.out.println("");
         }
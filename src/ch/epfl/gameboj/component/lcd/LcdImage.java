@@ -3,6 +3,9 @@ package ch.epfl.gameboj.component.lcd;
 import ch.epfl.gameboj.Preconditions;
 import ch.epfl.gameboj.bits.BitVector;
 
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -10,6 +13,8 @@ import java.util.Objects;
 
 public final class LcdImage {
 
+    static final int COLORS = 4;
+
     private int width, height;
     private List<LcdImageLine> lines;
 
@@ -75,6 +80,106 @@ public final class LcdImage {
         return (msb << 1) + lsb;
     }
 
+    /**
+     * Copies the colors (from 0 to 3) of all the pixels of the image, line
+     * by line
+     * @param dst the array to copy the colors to, one per byte
+     * @throws IllegalArgumentException if {@code dst} is smaller than the
+     * image
+     */
+    public void copyColors(byte[] dst) {
+        Preconditions.checkArgument(dst.length >= width * height);
+        for (int y = 0; y < height; ++y)
+            copyLineColors(y, dst, y * width);
+    }
+
+    /**
+     * Copies the pixels of the image, line by line, as the ARGB values the
+     * palette gives to their colors
+     * @param dst the array to copy the pixels to
+     * @param palette the ARGB values of the 4 colors
+     * @throws IllegalArgumentException if {@code dst} is smaller than the
+     * image, or if {@code palette} doesn't have 4 values
+     */
+    public void copyColors(int[] dst, int[] palette) {
+        Preconditions.checkArgument(dst.length >= width * height);
+        Preconditions.checkArgument(palette.length == COLORS);
+        for (int y = 0; y < height; ++y)
+            copyLineColors(y, dst, y * width, palette);
+    }
+
+    /**
+     * Copies the colors of the pixels of a line, 32 pixels at a time, the
+     * last group being cut to the width of the image
+     * @param y the index of the line
+     * @param dst the array to copy the colors to, one per byte
+     * @param offset the index in {@code dst} of the color of the first pixel
+     */
+    private void copyLineColors(int y, byte[] dst, int offset) {
+        LcdImageLine line = lines.get(y);
+        for (int start = 0; start < width; start += Integer.SIZE) {
+            int msb = line.msb().element(start / Integer.SIZE);
+            int lsb = line.lsb().element(start / Integer.SIZE);
+            int end = Math.min(start + Integer.SIZE, width);
+            for (int x = offset + start; x < offset + end; ++x) {
+                dst[x] = (byte) ((msb & 1) << 1 | (lsb & 1));
+                msb >>>= 1;
+                lsb >>>= 1;
+            }
+        }
+    }
+
+    /**
+     * Copies the pixels of a line, 32 pixels at a time, as the ARGB values
+     * the palette gives to their colors
+     * @param y the index of the line
+     * @param dst the array to copy the pixels to
+     * @param offset the index in {@code dst} of the first pixel
+     * @param palette the ARGB values of the 4 colors
+     */
+    private void copyLineColors(int y, int[] dst, int offset, int[] palette) {
+        LcdImageLine line = lines.get(y);
+        for (int start = 0; start < width; start += Integer.SIZE) {
+            int msb = line.msb().element(start / Integer.SIZE);
+            int lsb = line.lsb().element(start / Integer.SIZE);
+            int end = Math.min(start + Integer.SIZE, width);
+            for (int x = offset + start; x < offset + end; ++x) {
+                dst[x] = palette[(msb & 1) << 1 | (lsb & 1)];
+                msb >>>= 1;
+                lsb >>>= 1;
+            }
+        }
+    }
+
+    /**
+     * Copies the pixels of the image straight into the data buffer of the
+     * given image
+     * @param image an image of the same size, of type
+     * {@link BufferedImage#TYPE_INT_ARGB} or {@link BufferedImage#TYPE_INT_RGB}
+     * @param palette the ARGB values of the 4 colors
+     * @throws IllegalArgumentException if {@code image} can't be written to
+     * directly, or if {@code palette} doesn't have 4 values
+     * @see #copyColors(int[], int[])
+     */
+    public void copyColors(BufferedImage image, int[] palette) {
+        copyColors(pixelsOf(image, width, height), palette);
+    }
+
+    /**
+     * @return the array holding the pixels of the given image, if they are
+     * all there and stored as ARGB or RGB values, line by line
+     * @throws IllegalArgumentException otherwise
+     */
+    static int[] pixelsOf(BufferedImage image, int width, int height) {
+        Preconditions.checkArgument(image.getWidth() == width && image.getHeight() == height);
+        Preconditions.checkArgument(image.getType() == BufferedImage.TYPE_INT_ARGB
+                || image.getType() == BufferedImage.TYPE_INT_RGB);
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        Preconditions.checkArgument(buffer.getSize() == width * height
+                && buffer.getOffset() == 0);
+        return ((DataBufferInt) buffer).getData();
+    }
+
     /**
      * LcdImage.Builder
      *
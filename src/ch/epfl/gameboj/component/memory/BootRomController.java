@@ -1,6 +1,7 @@
 package ch.epfl.gameboj.component.memory;
 
 import ch.epfl.gameboj.AddressMap;
+import ch.epfl.gameboj.Bus;
 import ch.epfl.gameboj.Preconditions;
 import ch.epfl.gameboj.component.Component;
 import ch.epfl.gameboj.component.cartridge.Cartridge;
@@ -18,6 +19,7 @@ import java.util.Objects;
 public final class BootRomController implements Component {
 
     private final Cartridge cartridge;
+    private Bus bus;
     private boolean bootRomDisabled = false;
 
     /**
@@ -45,6 +47,20 @@ public final class BootRomController implements Component {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * Copies the cartridge block, then the part of the boot rom it overlaps
+     * if the boot rom is enabled
+     */
+    @Override
+    public void readBlock(int address, byte[] dst, int offset, int length) {
+        Preconditions.checkBlock(address, dst, offset, length);
+        cartridge.readBlock(address, dst, offset, length);
+        int end = Math.min(address + length, AddressMap.BOOT_ROM_END);
+        if (!bootRomDisabled && address < end)
+            System.arraycopy(BootRom.DATA, address, dst, offset, end - address);
+    }
+
     /**
      * {@inheritDoc}
      * Disables the boot rom if writing to the boot rom disable address
@@ -55,8 +71,26 @@ public final class BootRomController implements Component {
         Preconditions.checkBits8(data);
         if ((address == AddressMap.REG_BOOT_ROM_DISABLE) && !bootRomDisabled) {
             bootRomDisabled = true;
+            if (bus != null)
+                bus.markModified(AddressMap.BOOT_ROM_START, AddressMap.BOOT_ROM_END);
         }
         cartridge.write(address, data);
     }
 
+    /**
+     * {@inheritDoc}
+     * Only attaches to the cartridge rom and to the boot rom disable register,
+     * and notifies the bus when the boot rom gets disabled. The ram of the
+     * cartridge, if any, is attached directly
+     */
+    @Override
+    public void attachTo(Bus bus) {
+        bus.attach(this, AddressMap.CARTRIDGE_ROM_START, AddressMap.CARTRIDGE_ROM_END);
+        bus.attachRegister(AddressMap.REG_BOOT_ROM_DISABLE,
+                () -> read(AddressMap.REG_BOOT_ROM_DISABLE),
+                data -> write(AddressMap.REG_BOOT_ROM_DISABLE, data));
+        cartridge.attachRamTo(bus);
+        this.bus = bus;
+    }
+
 }
@@ -2,16 +2,26 @@ package ch.epfl.gameboj.component.memory;
 
 import ch.epfl.gameboj.Preconditions;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
 /**
  * Ram
  *
- * A class representing a memory that can be read from and written to
+ * A class representing a memory that can be read from and written to. Its
+ * data is either on the heap, off the heap, or a file mapped in memory, which
+ * is flushed to the disk in the background
  *
  * @author Ulysse Ramage (282300)
  */
 public final class Ram {
 
-    private final byte[] data;
+    private final ByteBuffer data;
 
     /**
      * Creates a new ram with the specified size
@@ -20,7 +30,49 @@ public final class Ram {
      */
     public Ram(int size) {
         Preconditions.checkArgument(size >= 0);
-        this.data = new byte[size];
+        this.data = ByteBuffer.wrap(new byte[size]);
+    }
+
+    private Ram(ByteBuffer data) {
+        this.data = data;
+    }
+
+    /**
+     * Creates a new ram with the specified size, whose data is allocated off
+     * the heap. Such a ram isn't attached to a bus as plain memory, so its
+     * accesses through the bus are slower than those of a ram on the heap
+     * @param size the size of the ram
+     * @return a ram whose data is off the heap
+     * @throws IllegalArgumentException if {@code size} is negative
+     */
+    public static Ram offHeap(int size) {
+        Preconditions.checkArgument(size >= 0);
+        return new Ram(ByteBuffer.allocateDirect(size));
+    }
+
+    /**
+     * Creates a ram of the specified size whose data is the contents of a file,
+     * mapped in memory so that writes to the ram land in the file. The file is
+     * created or extended if needed, and is flushed to the disk periodically
+     * and when the virtual machine shuts down
+     * @param file the file to map
+     * @param size the size of the ram
+     * @return a ram whose data is the contents of {@code file}
+     * @throws NullPointerException if {@code file} is null
+     * @throws IllegalArgumentException if {@code size} is negative
+     * @throws IOException if the file can't be opened or mapped
+     * @see #flush()
+     */
+    public static Ram ofFile(File file, int size) throws IOException {
+        Objects.requireNonNull(file);
+        Preconditions.checkArgument(size >= 0);
+        Ram ram;
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ram = new Ram(channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+        RamFlusher.register(ram);
+        return ram;
     }
 
     /**
@@ -30,8 +82,7 @@ public final class Ram {
      * @throws IndexOutOfBoundsException if {@code index} is invalid
      */
     public int read(int index) {
-        byte v = this.data[index];
-        return Byte.toUnsignedInt(v);
+        return Byte.toUnsignedInt(this.data.get(index));
     }
 
     /**
@@ -43,14 +94,66 @@ public final class Ram {
      */
     public void write(int index, int value) {
         Preconditions.checkBits8(value);
-        this.data[index] = (byte)value;
+        this.data.put(index, (byte)value);
+    }
+
+    /**
+     * Copies values of the ram data to an array
+     * @param index the index of the first value to copy
+     * @param dst the array to copy the values to
+     * @param offset the index in {@code dst} of the first value
+     * @param length the number of values to copy
+     * @throws IndexOutOfBoundsException if the values exceed the ram data
+     * or {@code dst}
+     */
+    public void readBlock(int index, byte[] dst, int offset, int length) {
+        this.data.get(index, dst, offset, length);
+    }
+
+    /**
+     * Copies values of an array to the ram data
+     * @param index the index of the first value to write
+     * @param src the array holding the values to write
+     * @param offset the index in {@code src} of the first value
+     * @param length the number of values to write
+     * @throws IndexOutOfBoundsException if the values exceed the ram data
+     * or {@code src}
+     */
+    public void writeBlock(int index, byte[] src, int offset, int length) {
+        this.data.put(index, src, offset, length);
     }
 
     /**
      * @return the size of the ram
      */
     public int size() {
-        return this.data.length;
+        return this.data.capacity();
+    }
+
+    /**
+     * Gives a read-only view of the ram data, which reflects its later changes.
+     * The view can be copied in bulk, or shared when the data is off the heap
+     * @return a read-only buffer whose contents are the ram data
+     */
+    public ByteBuffer asReadOnlyBuffer() {
+        return this.data.asReadOnlyBuffer();
+    }
+
+    /**
+     * Writes the data of a ram mapped to a file to the disk, blocking until
+     * it is done. Does nothing for a ram on the heap
+     */
+    public void flush() {
+        if (this.data instanceof MappedByteBuffer)
+            ((MappedByteBuffer) this.data).force();
+    }
+
+    /**
+     * @return the array backing the ram, for its controllers to attach it
+     * to a bus as plain memory, or null if its data isn't on the heap
+     */
+    byte[] data() {
+        return this.data.hasArray() ? this.data.array() : null;
     }
 
 }
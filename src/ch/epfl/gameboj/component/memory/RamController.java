@@ -1,5 +1,6 @@
 package ch.epfl.gameboj.component.memory;
 
+import ch.epfl.gameboj.Bus;
 import ch.epfl.gameboj.Preconditions;
 import ch.epfl.gameboj.component.Component;
 
@@ -75,6 +76,46 @@ public final class RamController implements Component {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * Copies the part of the block within the controller range at once
+     */
+    @Override
+    public void readBlock(int address, byte[] dst, int offset, int length) {
+        Preconditions.checkBlock(address, dst, offset, length);
+        int start = Math.max(address, startAddress);
+        int end = Math.min(address + length, endAddress);
+        if (start < end)
+            ram.readBlock(start - startAddress, dst, offset + start - address, end - start);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Copies the part of the block within the controller range at once
+     */
+    @Override
+    public void writeBlock(int address, byte[] src, int offset, int length) {
+        Preconditions.checkBlock(address, src, offset, length);
+        int start = Math.max(address, startAddress);
+        int end = Math.min(address + length, endAddress);
+        if (start < end)
+            ram.writeBlock(start - startAddress, src, offset + start - address, end - start);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Only attaches the ram itself, as plain memory, to the address range of
+     * the controller, or the controller if the ram data isn't on the heap
+     */
+    @Override
+    public void attachTo(Bus bus) {
+        byte[] data = ram.data();
+        if (data != null)
+            bus.attachMemory(data, 0, startAddress, endAddress);
+        else
+            bus.attach(this, startAddress, endAddress);
+    }
+
     private boolean isWithinBounds(int address) {
         return (startAddress <= address && address < endAddress);
     }
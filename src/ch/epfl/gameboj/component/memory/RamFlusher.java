@@ -0,0 +1,64 @@
+package ch.epfl.gameboj.component.memory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RamFlusher
+ *
+ * Flushes the rams mapped to files from a background thread, periodically and
+ * when the virtual machine shuts down, so that writing to them never waits
+ * for the disk. Rams are only weakly held: the changes of a ram that got
+ * collected are still written back by the operating system
+ *
+ * @author Ulysse Ramage (282300)
+ */
+final class RamFlusher {
+
+    /** Delay between two flushes, in milliseconds */
+    static final long FLUSH_PERIOD = 1000;
+
+    private static final Set<Ram> RAMS =
+            Collections.newSetFromMap(new WeakHashMap<>());
+    private static ScheduledExecutorService executor;
+
+    /** Private constructor to prevent instancing */
+    private RamFlusher() {}
+
+    /**
+     * Flushes the given ram in the background from now on, starting the
+     * background thread if needed
+     * @param ram the ram to flush
+     */
+    static synchronized void register(Ram ram) {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "ram-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(RamFlusher::flushAll,
+                    FLUSH_PERIOD, FLUSH_PERIOD, TimeUnit.MILLISECONDS);
+            Runtime.getRuntime().addShutdownHook(
+                    new Thread(RamFlusher::flushAll, "ram-flusher-shutdown"));
+        }
+        RAMS.add(ram);
+    }
+
+    /** Flushes all the registered rams */
+    static void flushAll() {
+        List<Ram> rams;
+        synchronized (RamFlusher.class) {
+            rams = new ArrayList<>(RAMS);
+        }
+        for (Ram ram : rams)
+            ram.flush();
+    }
+
+}
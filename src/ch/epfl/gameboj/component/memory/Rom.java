@@ -1,18 +1,24 @@
 package ch.epfl.gameboj.component.memory;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.Objects;
 
 /**
  * Rom
  *
- * A class representing a memory that can only be read from
+ * A class representing a memory that can only be read from. Its data is
+ * either a private copy on the heap, or a file mapped in memory
  *
  * @author Ulysse Ramage (282300)
  */
 public final class Rom {
 
-    private final byte[] data;
+    private final ByteBuffer data;
 
     /**
      * Creates a rom from the specified data
@@ -21,7 +27,26 @@ public final class Rom {
      */
     public Rom(byte[] data) {
         Objects.requireNonNull(data);
-        this.data = Arrays.copyOf(data, data.length);
+        this.data = ByteBuffer.wrap(Arrays.copyOf(data, data.length));
+    }
+
+    private Rom(ByteBuffer data) {
+        this.data = data;
+    }
+
+    /**
+     * Creates a rom whose data is the contents of a file, mapped in memory
+     * (read-only) instead of being copied to the heap
+     * @param file the file to map
+     * @return a rom whose data is the contents of {@code file}
+     * @throws NullPointerException if {@code file} is null
+     * @throws IOException if the file can't be opened or mapped
+     */
+    public static Rom ofFile(File file) throws IOException {
+        Objects.requireNonNull(file);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new Rom(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
     }
 
     /**
@@ -31,15 +56,46 @@ public final class Rom {
      * @throws IndexOutOfBoundsException if {@code index} is invalid
      */
     public int read(int index) {
-        byte v = this.data[index];
-        return Byte.toUnsignedInt(v);
+        return Byte.toUnsignedInt(this.data.get(index));
+    }
+
+    /**
+     * Copies values of the rom data to an array
+     * @param index the index of the first value to copy
+     * @param dst the array to copy the values to
+     * @param offset the index in {@code dst} of the first value
+     * @param length the number of values to copy
+     * @throws IndexOutOfBoundsException if the values exceed the rom data
+     * or {@code dst}
+     */
+    public void readBlock(int index, byte[] dst, int offset, int length) {
+        this.data.get(index, dst, offset, length);
+    }
+
+    /**
+     * Gives a part of the rom, which shares its data instead of copying it
+     * @param index the index of the first value of the part
+     * @param length the size of the part
+     * @return a rom whose data is the given part of the rom data
+     * @throws IndexOutOfBoundsException if the part exceeds the rom data
+     */
+    public Rom slice(int index, int length) {
+        return new Rom(this.data.slice(index, length));
     }
 
     /**
      * @return the size of the rom
      */
     public int size() {
-        return this.data.length;
+        return this.data.capacity();
+    }
+
+    /**
+     * @return a read-only view of the rom data, for the registry to compare
+     * roms by contents
+     */
+    ByteBuffer data() {
+        return this.data.asReadOnlyBuffer();
     }
 
 }
@@ -0,0 +1,158 @@
+package ch.epfl.gameboj.component.memory;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * RomRegistry
+ *
+ * A registry of rom images, interned by contents so that every cartridge of
+ * a same game shares the data of a single read-only rom. The roms handed
+ * out are only weakly held, and an image is dropped once none of them is
+ * used anymore.
+ *
+ * Images are looked up by their size and the checksums of their header,
+ * and their contents are only compared with those of the registered images
+ * having the same key. Interning a rom that is not registered yet thus only
+ * reads its header, which leaves the pages of a mapped rom file on disk
+ *
+ * @author Ulysse Ramage (282300)
+ */
+public final class RomRegistry {
+
+    private static final RomRegistry SHARED = new RomRegistry();
+
+    private static final int HEADER_CHECKSUM_ADDRESS = 0x14D;
+    private static final int GLOBAL_CHECKSUM_ADDRESS = 0x14E;
+    private static final int HEADER_END = 0x150;
+
+    /** Registered images by size and header checksums */
+    private final Map<Long, List<Image>> images = new HashMap<>();
+
+    /**
+     * @return the registry shared by all the cartridges loaded from files
+     */
+    public static RomRegistry shared() {
+        return SHARED;
+    }
+
+    /**
+     * Gives a rom sharing the data of the registered rom having the same
+     * contents as the given one, or registers the given rom if there is none
+     * @param rom the rom to intern
+     * @return {@code rom} if it is registered, or has contents that are not,
+     * a new view of the data of the registered rom otherwise
+     * @throws NullPointerException if {@code rom} is null
+     */
+    public synchronized Rom intern(Rom rom) {
+        Objects.requireNonNull(rom);
+        removeUnusedImages();
+        List<Image> candidates = images.computeIfAbsent(key(rom), k -> new ArrayList<>());
+        for (Image image : candidates) {
+            if (image.isUsedBy(rom))
+                return rom;
+        }
+        for (Image image : candidates) {
+            Rom registered = image.anyUser();
+            if (registered != null && registered.data().equals(rom.data())) {
+                Rom shared = registered.slice(0, registered.size());
+                image.users.add(new WeakReference<>(shared));
+                return shared;
+            }
+        }
+        candidates.add(new Image(rom));
+        return rom;
+    }
+
+    /**
+     * @return the number of distinct roms currently registered
+     */
+    public synchronized int size() {
+        removeUnusedImages();
+        int size = 0;
+        for (List<Image> candidates : images.values())
+            size += candidates.size();
+        return size;
+    }
+
+    /**
+     * @return the number of bytes currently saved by interning, that is for
+     * every registered image, its size times the number of roms sharing it
+     * besides the first one
+     */
+    public synchronized long savedBytes() {
+        long savedBytes = 0;
+        for (List<Image> candidates : images.values()) {
+            for (Image image : candidates) {
+                int users = image.liveUsers();
+                if (users > 1)
+                    savedBytes += (long) (users - 1) * image.size;
+            }
+        }
+        return savedBytes;
+    }
+
+    private void removeUnusedImages() {
+        images.values().removeIf(candidates -> {
+            candidates.removeIf(i -> i.anyUser() == null);
+            return candidates.isEmpty();
+        });
+    }
+
+    /**
+     * @return a key made of the size of the rom and, if it has a header, of
+     * its header and global checksums
+     */
+    private static long key(Rom rom) {
+        long key = (long) rom.size() << Integer.SIZE;
+        if (rom.size() >= HEADER_END) {
+            key |= rom.read(HEADER_CHECKSUM_ADDRESS) << 16
+                    | rom.read(GLOBAL_CHECKSUM_ADDRESS) << 8
+                    | rom.read(GLOBAL_CHECKSUM_ADDRESS + 1);
+        }
+        return key;
+    }
+
+    /**
+     * A registered image, with the roms sharing its data that were handed
+     * out by the registry
+     */
+    private static final class Image {
+
+        private final int size;
+        private final List<Reference<Rom>> users = new ArrayList<>();
+
+        Image(Rom rom) {
+            size = rom.size();
+            users.add(new WeakReference<>(rom));
+        }
+
+        Rom anyUser() {
+            for (Reference<Rom> user : users) {
+                Rom rom = user.get();
+                if (rom != null)
+                    return rom;
+            }
+            return null;
+        }
+
+        boolean isUsedBy(Rom rom) {
+            for (Reference<Rom> user : users)
+                if (user.get() == rom)
+                    return true;
+            return false;
+        }
+
+        int liveUsers() {
+            users.removeIf(r -> r.get() == null);
+            return users.size();
+        }
+
+    }
+
+}
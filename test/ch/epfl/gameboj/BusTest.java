@@ -5,6 +5,8 @@ package ch.epfl.gameboj;
 import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
 import static ch.epfl.test.TestRandomizer.newRandom;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -90,6 +92,257 @@ class BusTest {
             assertEquals((i * 2018) & 0xFF, b.read(i));
     }
 
+    @Test
+    void attachFailsForInvalidRange() {
+        Bus b = new Bus();
+        SimpleComponent c = new SimpleComponent(0, 0);
+        assertThrows(IllegalArgumentException.class,
+                () -> b.attach(c, 0x100, 0xFF));
+        assertThrows(IllegalArgumentException.class,
+                () -> b.attach(c, 0x100, 0x10001));
+        assertThrows(IllegalArgumentException.class,
+                () -> b.attach(c, -1, 0x100));
+    }
+
+    @Test
+    void rangedComponentOnlyReceivesAccessesInItsRange() {
+        Bus b = new Bus();
+        SimpleComponent c = new SimpleComponent(0xFF42, 7);
+        b.attach(c, 0xFF40, 0xFF4C);
+        b.write(0xFF3F, 1);
+        b.write(0x8000, 1);
+        assertFalse(c.wasWritten());
+        assertEquals(0xFF, b.read(0xFF4C));
+        assertFalse(c.wasRead());
+        b.write(0xFF42, 42);
+        assertTrue(c.wasWritten());
+        assertEquals(42, b.read(0xFF42));
+    }
+
+    @Test
+    void readReturnsValueOfFirstAttachedComponent() {
+        Bus b = new Bus();
+        b.attach(new SimpleComponent(0xC123, 1), 0xC000, 0xE000);
+        b.attach(new SimpleComponent(0xC123, 2));
+        b.attach(new SimpleComponent(0xFFFF, 3));
+        b.attach(new SimpleComponent(0xFFFF, 4), 0xFF80, 0x10000);
+        assertEquals(1, b.read(0xC123));
+        assertEquals(3, b.read(0xFFFF));
+    }
+
+    @Test
+    void attachMemoryFailsForInvalidRange() {
+        Bus b = new Bus();
+        byte[] memory = new byte[0x100];
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> b.attachMemory(memory, 1, 0xC000, 0xC100));
+        assertThrows(IllegalArgumentException.class,
+                () -> b.attachMemory(memory, 0, 0xC000, 0xBFFF));
+        assertThrows(NullPointerException.class,
+                () -> b.attachMemory(null, 0, 0xC000, 0xC100));
+    }
+
+    @Test
+    void memoryRegionIsReadAndWrittenAtItsOffset() {
+        Bus b = new Bus();
+        byte[] memory = new byte[0x300];
+        b.attachMemory(memory, 0x100, 0xC080, 0xC280);
+        b.write(0xC080, 0xAB);
+        b.write(0xC27F, 0xCD);
+        assertEquals(0xAB, Byte.toUnsignedInt(memory[0x100]));
+        assertEquals(0xCD, Byte.toUnsignedInt(memory[0x2FF]));
+        memory[0x180] = 0x12;
+        assertEquals(0x12, b.read(0xC100));
+        assertEquals(0xFF, b.read(0xC07F));
+        assertEquals(0xFF, b.read(0xC280));
+    }
+
+    @Test
+    void memoryRegionAddressesAreClippedTo16Bits() {
+        Bus b = new Bus();
+        byte[] memory = new byte[0x100];
+        b.attachMemory(memory, 0, 0xC000, 0xC100);
+        b.write(0x1C010, 0x42);
+        assertEquals(0x42, Byte.toUnsignedInt(memory[0x10]));
+        assertEquals(0x42, b.read(0xFFFFC010));
+        assertThrows(IllegalArgumentException.class, () -> b.read(0x1D000));
+        assertThrows(IllegalArgumentException.class, () -> b.write(-1, 0));
+    }
+
+    @Test
+    void memoryRegionSharingItsAddressesBehavesLikeAComponent() {
+        Bus b = new Bus();
+        SimpleComponent c = new SimpleComponent(0xFF90, 42);
+        b.attach(c);
+        byte[] memory = new byte[0x7F];
+        b.attachMemory(memory, 0, 0xFF80, 0xFFFF);
+        b.write(0xFF90, 7);
+        assertTrue(c.wasWritten());
+        assertEquals(7, memory[0x10]);
+        memory[0x10] = 9;
+        assertEquals(7, b.read(0xFF90));
+        memory[0x11] = 9;
+        assertEquals(9, b.read(0xFF91));
+    }
+
+    @Test
+    void attachRegisterFailsForInvalidArguments() {
+        Bus b = new Bus();
+        assertThrows(NullPointerException.class,
+                () -> b.attachRegister(0xFF00, null, d -> {}));
+        assertThrows(NullPointerException.class,
+                () -> b.attachRegister(0xFF00, () -> 0, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> b.attachRegister(0xFEFF, () -> 0, d -> {}));
+        assertThrows(IllegalArgumentException.class,
+                () -> b.attachRegister(0x10000, () -> 0, d -> {}));
+    }
+
+    @Test
+    void registerIsReadAndWrittenThroughItsHandlers() {
+        Bus b = new Bus();
+        int[] register = new int[1];
+        b.attachRegister(0xFF42, () -> register[0], d -> register[0] = d);
+        b.write(0xFF42, 0x5A);
+        assertEquals(0x5A, register[0]);
+        register[0] = 0x3C;
+        assertEquals(0x3C, b.read(0xFF42));
+        assertEquals(0xFF, b.read(0xFF43));
+    }
+
+    @Test
+    void registerWithoutDataReadsAsDefaultValue() {
+        Bus b = new Bus();
+        b.attachRegister(0xFF50, () -> Component.NO_DATA, d -> {});
+        assertEquals(0xFF, b.read(0xFF50));
+    }
+
+    @Test
+    void registerSharingItsAddressBehavesLikeAComponent() {
+        Bus b = new Bus();
+        int[] register = { Component.NO_DATA };
+        b.attachRegister(0xFF01, () -> register[0], d -> register[0] = d);
+        SimpleComponent c = new SimpleComponent(0xFF01, 42);
+        b.attach(c);
+        assertEquals(42, b.read(0xFF01));
+        b.write(0xFF01, 7);
+        assertTrue(c.wasWritten());
+        assertEquals(7, b.read(0xFF01));
+    }
+
+    @Test
+    void readBlockReadsLikeRead() {
+        Bus b = new Bus();
+        byte[] memory = new byte[0x300];
+        for (int i = 0; i < memory.length; ++i)
+            memory[i] = (byte) (i * 7);
+        b.attachMemory(memory, 0x100, 0xFE80, 0xFF01);
+        b.attachMemory(memory, 0, 0xC0C0, 0xC200);
+        b.attach(new SimpleComponent(0xC100, 42));
+        b.attach(new SimpleComponent(0xFF00, 43), 0xFE00, 0xFF04);
+        b.attachRegister(0xFF02, () -> 44, d -> {});
+        b.attachRegister(0xFF03, () -> Component.NO_DATA, d -> {});
+        byte[] block = new byte[0x10000];
+        b.readBlock(0, block, 0, block.length);
+        for (int a = 0; a <= 0xFFFF; ++a)
+            assertEquals(b.read(a), Byte.toUnsignedInt(block[a]));
+    }
+
+    @Test
+    void writeBlockWritesLikeWrite() {
+        Bus b = new Bus();
+        byte[] memory = new byte[0x300];
+        b.attachMemory(memory, 0, 0xC080, 0xC200);
+        SimpleComponent c = new SimpleComponent(0xC100, 0);
+        b.attach(c, 0xC100, 0xC200);
+        int[] register = new int[1];
+        b.attachRegister(0xFF40, () -> register[0], d -> register[0] = d);
+        byte[] block = new byte[0x10000];
+        for (int i = 0; i < block.length; ++i)
+            block[i] = (byte) (i ^ 0x5A);
+        int modifications = b.modificationCount(0xC100);
+        b.writeBlock(0x8000, block, 0x8000, 0x8000);
+        for (int a = 0xC080; a < 0xC200; ++a)
+            assertEquals((a ^ 0x5A) & 0xFF, Byte.toUnsignedInt(memory[a - 0xC080]));
+        assertEquals((0xC100 ^ 0x5A) & 0xFF, b.read(0xC100));
+        assertEquals((0xFF40 ^ 0x5A) & 0xFF, register[0]);
+        assertNotEquals(modifications, b.modificationCount(0xC100));
+    }
+
+    @Test
+    void regionsSharingMemoryAreModifiedTogether() {
+        Bus b = new Bus();
+        byte[] memory = new byte[0x2000];
+        b.attachMemory(memory, 0, 0xC000, 0xE000);
+        b.attachMemory(memory, 0, 0xE000, 0xFE00);
+        b.attachMemory(memory, 0x180, 0x4080, 0x4180);
+        int wram = b.modificationCount(0xC012), echo = b.modificationCount(0xE012);
+        b.write(0xE012, 1);
+        assertEquals(1, b.read(0xC012));
+        assertNotEquals(wram, b.modificationCount(0xC012));
+        wram = b.modificationCount(0xC012);
+        b.write(0xC012, 2);
+        assertNotEquals(echo, b.modificationCount(0xE012));
+
+        int low = b.modificationCount(0x4080), high = b.modificationCount(0x4100);
+        b.write(0xE000, 3);
+        assertEquals(low, b.modificationCount(0x4080));
+        assertEquals(high, b.modificationCount(0x4100));
+        b.write(0xC180, 4);
+        assertEquals(4, b.read(0x4080));
+        assertNotEquals(low, b.modificationCount(0x4080));
+        assertEquals(high, b.modificationCount(0x4100));
+        int echoHigh = b.modificationCount(0xE200);
+        wram = b.modificationCount(0xC012);
+        b.markModified(0x4100, 0x4101);
+        assertNotEquals(echoHigh, b.modificationCount(0xE200));
+        assertEquals(wram, b.modificationCount(0xC012));
+    }
+
+    @Test
+    void blockAccessesFailForInvalidBlock() {
+        Bus b = new Bus();
+        assertThrows(IllegalArgumentException.class,
+                () -> b.readBlock(0xFFFF, new byte[2], 0, 2));
+        assertThrows(IllegalArgumentException.class,
+                () -> b.writeBlock(-1, new byte[2], 0, 2));
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> b.readBlock(0, new byte[2], 1, 2));
+        assertThrows(NullPointerException.class,
+                () -> b.writeBlock(0, null, 0, 2));
+    }
+
+    @Test
+    void blockedMemoryIsNeitherReadNorWritten() {
+        Bus b = new Bus();
+        byte[] memory = new byte[0x10000];
+        b.attachMemory(memory, 0, 0, 0x10000);
+        memory[0x1234] = 1;
+        memory[0xFF80] = 2;
+        b.setMemoryBlocked(true);
+        assertEquals(0xFF, b.read(0x1234));
+        assertEquals(0xFF, b.read(0xFEFF));
+        assertEquals(2, b.read(0xFF80));
+        b.write(0x1234, 3);
+        b.write(0xFF80, 4);
+        assertEquals(1, memory[0x1234]);
+        assertEquals(4, memory[0xFF80]);
+        b.setMemoryBlocked(false);
+        assertEquals(1, b.read(0x1234));
+    }
+
+    @Test
+    void unblockingMemoryDoesNotMarkItModified() {
+        Bus b = new Bus();
+        int modifications = b.modificationCount(0x1234);
+        b.setMemoryBlocked(true);
+        assertTrue(b.isMemoryBlocked());
+        b.read(0x1234);
+        b.setMemoryBlocked(false);
+        assertFalse(b.isMemoryBlocked());
+        assertEquals(modifications, b.modificationCount(0x1234));
+    }
+
     @Test
     void writeFailsForInvalidAddress() {
         Random rng = newRandom();
@@ -5,20 +5,36 @@ import ch.epfl.gameboj.component.DebugPrintComponent;
 import ch.epfl.gameboj.component.cartridge.Cartridge;
 import ch.epfl.gameboj.component.cpu.Cpu;
 import ch.epfl.gameboj.component.cpu.Opcode;
+import ch.epfl.gameboj.component.lcd.LcdController;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 
 public final class DebugMain {
 
     public static void main(String[] args) throws IOException {
 
         long cycles = 30000000;
+        Cpu.Option[] cpuOptions = {};
+        LcdController.Option[] lcdOptions = {};
 
         for (String filePath : args) {
+            Cpu.Option option = cpuOption(filePath);
+            if (option != null) {
+                cpuOptions = Arrays.copyOf(cpuOptions, cpuOptions.length + 1);
+                cpuOptions[cpuOptions.length - 1] = option;
+                continue;
+            }
+            LcdController.Option lcdOption = lcdOption(filePath);
+            if (lcdOption != null) {
+                lcdOptions = Arrays.copyOf(lcdOptions, lcdOptions.length + 1);
+                lcdOptions[lcdOptions.length - 1] = lcdOption;
+                continue;
+            }
             File romFile = new File(filePath);
 
-            GameBoy gb = new GameBoy(Cartridge.ofFile(romFile));
+            GameBoy gb = new GameBoy(Cartridge.ofFile(romFile), cpuOptions, lcdOptions);
             Component printer = new DebugPrintComponent();
             printer.attachTo(gb.bus());
             while (gb.cycles() < cycles) {
@@ -29,4 +45,21 @@ public final class DebugMain {
         }
     }
 
+    private static Cpu.Option cpuOption(String arg) {
+        switch (arg) {
+            case "-tiered": return Cpu.Option.TIERED_EXECUTION;
+            case "-lazy-flags": return Cpu.Option.LAZY_FLAGS;
+            case "-alu-tables": return Cpu.Option.ALU_TABLES;
+            default: return null;
+        }
+    }
+
+    private static LcdController.Option lcdOption(String arg) {
+        switch (arg) {
+            case "-frame-buffer": return LcdController.Option.FRAME_BUFFER;
+            case "-headless": return LcdController.Option.HEADLESS;
+            default: return null;
+        }
+    }
+
 }
\ No newline at end of file
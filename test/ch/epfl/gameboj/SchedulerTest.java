@@ -0,0 +1,159 @@
+package ch.epfl.gameboj;
+
+import ch.epfl.gameboj.component.Clocked;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SchedulerTest {
+
+    private static final class RecordingComponent implements Clocked {
+        private final String name;
+        private final List<String> log;
+        private final long period;
+        private long nextEvent;
+
+        RecordingComponent(String name, List<String> log, long period) {
+            this.name = name;
+            this.log = log;
+            this.period = period;
+        }
+
+        @Override
+        public void cycle(long cycle) {
+            log.add(name + cycle);
+            nextEvent = cycle + period;
+        }
+
+        @Override
+        public long nextEventCycle(long cycle) {
+            return nextEvent;
+        }
+    }
+
+    @Test
+    void attachFailsForNullComponent() {
+        Scheduler s = new Scheduler();
+        assertThrows(NullPointerException.class, () -> s.attach(null));
+    }
+
+    @Test
+    void runUntilFailsForPastCycle() {
+        Scheduler s = new Scheduler();
+        s.runUntil(10);
+        assertThrows(IllegalArgumentException.class, () -> s.runUntil(9));
+    }
+
+    @Test
+    void runUntilAdvancesCyclesWithoutComponents() {
+        Scheduler s = new Scheduler();
+        s.runUntil(1000);
+        assertEquals(1000, s.cycles());
+        assertEquals(999, s.currentCycle());
+    }
+
+    @Test
+    void defaultComponentsAreCycledOnEveryCycle() {
+        List<Long> cycles = new ArrayList<>();
+        Scheduler s = new Scheduler();
+        s.attach(cycles::add);
+        s.runUntil(5);
+        s.runUntil(7);
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L, 5L, 6L), cycles);
+    }
+
+    @Test
+    void componentsAreOnlyCycledOnTheirEventsInAttachmentOrder() {
+        List<String> log = new ArrayList<>();
+        Scheduler s = new Scheduler();
+        s.attach(new RecordingComponent("a", log, 3));
+        s.attach(new RecordingComponent("b", log, 2));
+        s.runUntil(7);
+        assertEquals(List.of("a0", "b0", "b2", "a3", "b4", "a6", "b6"), log);
+    }
+
+    @Test
+    void rescheduledComponentIsAskedForItsNextEventAgain() {
+        List<String> log = new ArrayList<>();
+        Scheduler s = new Scheduler();
+        RecordingComponent c = new RecordingComponent("c", log, 100);
+        s.attach(c);
+        s.runUntil(10);
+        c.nextEvent = 50;
+        s.runUntil(60);
+        assertEquals(List.of("c0"), log);
+        s.reschedule(c);
+        s.runUntil(200);
+        assertEquals(List.of("c0", "c60", "c160"), log);
+    }
+
+    private static final class RunningAheadComponent implements Clocked {
+        private final Scheduler scheduler;
+        private final List<Boolean> results = new ArrayList<>();
+
+        RunningAheadComponent(Scheduler scheduler) {
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public void cycle(long cycle) {
+            for (long c = cycle + 5; results.size() < 4; c += 5) {
+                boolean ranAhead = scheduler.runAhead(this, c);
+                results.add(ranAhead);
+                if (!ranAhead)
+                    break;
+            }
+        }
+
+        @Override
+        public long nextEventCycle(long cycle) {
+            return results.isEmpty() ? Math.max(cycle, 5) : Long.MAX_VALUE;
+        }
+    }
+
+    @Test
+    void runAheadStopsBeforeEventsOfComponentsAttachedBefore() {
+        List<String> log = new ArrayList<>();
+        Scheduler s = new Scheduler();
+        s.attach(new RecordingComponent("a", log, 10));
+        RunningAheadComponent c = new RunningAheadComponent(s);
+        s.attach(c);
+        s.runUntil(100);
+        assertEquals(List.of(false), c.results);
+    }
+
+    @Test
+    void runAheadStopsAfterEventsOfComponentsAttachedAfter() {
+        List<String> log = new ArrayList<>();
+        Scheduler s = new Scheduler();
+        RunningAheadComponent c = new RunningAheadComponent(s);
+        s.attach(c);
+        s.attach(new RecordingComponent("a", log, 10));
+        s.runUntil(100);
+        assertEquals(List.of(true, false), c.results);
+    }
+
+    @Test
+    void runAheadStopsAtRunLimit() {
+        Scheduler s = new Scheduler();
+        RunningAheadComponent c = new RunningAheadComponent(s);
+        s.attach(c);
+        s.runUntil(12);
+        assertEquals(List.of(true, false), c.results);
+        assertEquals(11, s.currentCycle());
+        assertFalse(s.runAhead(c, 12));
+    }
+
+    @Test
+    void runAheadFailsForUnattachedComponent() {
+        Scheduler s = new Scheduler();
+        s.runUntil(1);
+        assertThrows(IllegalArgumentException.class,
+                () -> s.runAhead(new RunningAheadComponent(s), 10));
+    }
+}
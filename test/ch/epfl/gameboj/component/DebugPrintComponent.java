@@ -1,5 +1,7 @@
 package ch.epfl.gameboj.component;
 
+import ch.epfl.gameboj.Bus;
+
 public final class DebugPrintComponent implements Component {
 
     @Override
@@ -14,4 +16,9 @@ public final class DebugPrintComponent implements Component {
         }
     }
 
+    @Override
+    public void attachTo(Bus bus) {
+        bus.attach(this, 0xFF01, 0xFF03);
+    }
+
 }
\ No newline at end of file
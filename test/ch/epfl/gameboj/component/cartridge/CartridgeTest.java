@@ -0,0 +1,105 @@
+package ch.epfl.gameboj.component.cartridge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import ch.epfl.gameboj.Bus;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CartridgeTest {
+
+    private static File romFile(Path directory, int size, int type, int ramSizeCode)
+            throws IOException {
+        byte[] data = new byte[size];
+        for (int i = 0; i < data.length; ++i)
+            data[i] = (byte) (i / 0x4000);
+        data[0x147] = (byte) type;
+        data[0x149] = (byte) ramSizeCode;
+        return Files.write(directory.resolve("rom" + type + ".gb"), data).toFile();
+    }
+
+    @Test
+    void ofFileCreatesControllerOfCartridgeType(@TempDir Path directory)
+            throws IOException {
+        Cartridge c0 = Cartridge.ofFile(romFile(directory, 0x8000, 0, 0));
+        c0.write(0x2000, 0x02);
+        assertEquals(1, c0.read(0x4000));
+
+        Cartridge c1 = Cartridge.ofFile(romFile(directory, 0x10000, 3, 2));
+        c1.write(0x2000, 0x02);
+        assertEquals(2, c1.read(0x4000));
+        c1.write(0x0000, 0x0A);
+        c1.write(0xA000, 0x42);
+        assertEquals(0x42, c1.read(0xA000));
+
+        Cartridge c5 = Cartridge.ofFile(romFile(directory, 0x20000, 0x1B, 4));
+        c5.write(0x2000, 0x07);
+        assertEquals(7, c5.read(0x4000));
+        assertTrue(c5.controller() instanceof MBC5);
+    }
+
+    @Test
+    void ofFileMapsBatteryRamToSaveFile(@TempDir Path directory)
+            throws IOException {
+        File rom = romFile(directory, 0x8000, 3, 3);
+        Cartridge c1 = Cartridge.ofFile(rom);
+        c1.write(0x0000, 0x0A);
+        c1.write(0x4000, 0x02);
+        c1.write(0x6000, 0x01);
+        c1.write(0xA123, 0x42);
+
+        Path save = directory.resolve("rom3.sav");
+        assertEquals(0x8000, Files.size(save));
+        Cartridge c2 = Cartridge.ofFile(rom);
+        c2.write(0x0000, 0x0A);
+        c2.write(0x4000, 0x02);
+        c2.write(0x6000, 0x01);
+        assertEquals(0x42, c2.read(0xA123));
+    }
+
+    @Test
+    void attachToAttachesRomAndRam(@TempDir Path directory) throws IOException {
+        Bus b0 = new Bus();
+        Cartridge.ofFile(romFile(directory, 0x8000, 0, 0)).attachTo(b0);
+        assertEquals(1, b0.read(0x4000));
+
+        Bus b1 = new Bus();
+        Cartridge.ofFile(romFile(directory, 0x10000, 3, 2)).attachTo(b1);
+        b1.write(0x2000, 0x02);
+        assertEquals(2, b1.read(0x4000));
+        b1.write(0x0000, 0x0A);
+        b1.write(0xA000, 0x42);
+        assertEquals(0x42, b1.read(0xA000));
+    }
+
+    @Test
+    void attachRamToOnlyAttachesRam(@TempDir Path directory) throws IOException {
+        Bus bus = new Bus();
+        Cartridge c1 = Cartridge.ofFile(romFile(directory, 0x10000, 3, 2));
+        c1.attachRamTo(bus);
+        assertEquals(0xFF, bus.read(0x4000));
+        c1.write(0x0000, 0x0A);
+        bus.write(0xA000, 0x42);
+        assertEquals(0x42, c1.read(0xA000));
+
+        Bus b0 = new Bus();
+        Cartridge.ofFile(romFile(directory, 0x8000, 0, 0)).attachRamTo(b0);
+        assertEquals(0xFF, b0.read(0x4000));
+    }
+
+    @Test
+    void ofFileFailsForUnsupportedCartridges(@TempDir Path directory) {
+        assertThrows(IllegalArgumentException.class,
+                () -> Cartridge.ofFile(romFile(directory, 0x8000, 0x20, 0)));
+        assertThrows(IllegalArgumentException.class,
+                () -> Cartridge.ofFile(romFile(directory, 0x8000, 1, 6)));
+    }
+
+}
@@ -0,0 +1,115 @@
+package ch.epfl.gameboj.component.cartridge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import ch.epfl.gameboj.Bus;
+import ch.epfl.gameboj.component.Component;
+import ch.epfl.gameboj.component.ComponentTest;
+import ch.epfl.gameboj.component.memory.Rom;
+
+class MBC1Test implements ComponentTest {
+
+    @Override
+    public Component newComponent() {
+        return new MBC1(newRom(2), 0x2000);
+    }
+
+    /** @return a rom whose values are the index of their bank */
+    private static Rom newRom(int banks) {
+        byte[] data = new byte[banks * 0x4000];
+        for (int i = 0; i < data.length; ++i)
+            data[i] = (byte) (i / 0x4000);
+        return new Rom(data);
+    }
+
+    @Test
+    void constructorFailsForInvalidSizes() {
+        assertThrows(NullPointerException.class, () -> new MBC1(null, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> new MBC1(new Rom(new byte[0x4000]), 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> new MBC1(new Rom(new byte[0xC000]), 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> new MBC1(newRom(2), 0x1000));
+    }
+
+    @Test
+    void romBanksAreSwitched() {
+        MBC1 m = new MBC1(newRom(32), 0);
+        assertEquals(0, m.read(0x1234));
+        assertEquals(1, m.read(0x4000));
+        m.write(0x2000, 0x13);
+        assertEquals(0x13, m.read(0x7FFF));
+        m.write(0x3FFF, 0x00);
+        assertEquals(1, m.read(0x4000));
+        m.write(0x2000, 0x25);
+        assertEquals(0x05, m.read(0x4000));
+        assertEquals(0, m.read(0x0000));
+    }
+
+    @Test
+    void upperBitsSelectRomBanksOfLargeRoms() {
+        MBC1 m = new MBC1(newRom(128), 0);
+        m.write(0x2000, 0x02);
+        m.write(0x4000, 0x01);
+        assertEquals(0x22, m.read(0x4000));
+        assertEquals(0x00, m.read(0x0000));
+        m.write(0x6000, 0x01);
+        assertEquals(0x20, m.read(0x0000));
+        assertEquals(0x22, m.read(0x4000));
+    }
+
+    @Test
+    void ramIsOnlyAccessibleWhenEnabled() {
+        MBC1 m = new MBC1(newRom(2), 0x2000);
+        m.write(0xA000, 0x42);
+        assertEquals(Component.NO_DATA, m.read(0xA000));
+        m.write(0x0000, 0x0A);
+        m.write(0xA000, 0x42);
+        assertEquals(0x42, m.read(0xA000));
+        m.write(0x0000, 0x00);
+        assertEquals(Component.NO_DATA, m.read(0xA000));
+        m.write(0x0000, 0x1A);
+        assertEquals(0x42, m.read(0xA000));
+    }
+
+    @Test
+    void ramBanksAreSwitchedInMode1() {
+        MBC1 m = new MBC1(newRom(2), 0x8000);
+        m.write(0x0000, 0x0A);
+        for (int bank = 0; bank < 4; ++bank) {
+            m.write(0x4000, bank);
+            m.write(0x6000, 1);
+            m.write(0xBFFF, bank + 1);
+        }
+        m.write(0x6000, 0);
+        assertEquals(1, m.read(0xBFFF));
+        m.write(0x6000, 1);
+        for (int bank = 0; bank < 4; ++bank) {
+            m.write(0x4000, bank);
+            assertEquals(bank + 1, m.read(0xBFFF));
+        }
+    }
+
+    @Test
+    void bankSwitchesMarkTheirRegionAsModified() {
+        Bus bus = new Bus();
+        MBC1 m = new MBC1(newRom(8), 0x2000);
+        m.attachTo(bus);
+        int low = bus.modificationCount(0x0000);
+        int high = bus.modificationCount(0x4000);
+        m.write(0x2000, 0x03);
+        assertEquals(low, bus.modificationCount(0x0000));
+        assertNotEquals(high, bus.modificationCount(0x4000));
+        int ram = bus.modificationCount(0xA000);
+        m.write(0x0000, 0x0A);
+        assertNotEquals(ram, bus.modificationCount(0xA000));
+        bus.write(0xA000, 0x42);
+        assertEquals(0x42, bus.read(0xA000));
+    }
+
+}
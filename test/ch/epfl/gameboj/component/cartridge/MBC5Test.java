@@ -0,0 +1,113 @@
+package ch.epfl.gameboj.component.cartridge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import ch.epfl.gameboj.Bus;
+import ch.epfl.gameboj.component.Component;
+import ch.epfl.gameboj.component.ComponentTest;
+import ch.epfl.gameboj.component.memory.Rom;
+
+class MBC5Test implements ComponentTest {
+
+    @Override
+    public Component newComponent() {
+        return new MBC5(newRom(2), 0x2000);
+    }
+
+    /** @return a rom whose values at the start of a bank are its index */
+    private static Rom newRom(int banks) {
+        byte[] data = new byte[banks * 0x4000];
+        for (int bank = 0; bank < banks; ++bank) {
+            data[bank * 0x4000] = (byte) bank;
+            data[bank * 0x4000 + 1] = (byte) (bank >> 8);
+        }
+        return new Rom(data);
+    }
+
+    private static int highBank(MBC5 m) {
+        return m.read(0x4001) << 8 | m.read(0x4000);
+    }
+
+    @Test
+    void constructorFailsForInvalidArguments() {
+        assertThrows(NullPointerException.class, () -> new MBC5(null, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> new MBC5(new Rom(new byte[0xC000]), 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> new MBC5(newRom(2), 0x4001));
+        assertThrows(IllegalArgumentException.class,
+                () -> new MBC5(newRom(2), 0x40000));
+    }
+
+    @Test
+    void romBanksAreSelectedThroughNineBits() {
+        MBC5 m = new MBC5(newRom(512), 0);
+        assertEquals(1, highBank(m));
+        m.write(0x2000, 0x42);
+        assertEquals(0x42, highBank(m));
+        m.write(0x3000, 0x01);
+        assertEquals(0x142, highBank(m));
+        m.write(0x2FFF, 0x00);
+        assertEquals(0x100, highBank(m));
+        m.write(0x3FFF, 0x00);
+        assertEquals(0, highBank(m));
+        assertEquals(0, m.read(0x0000));
+    }
+
+    @Test
+    void romBankNumbersWrapAroundRomSize() {
+        MBC5 m = new MBC5(newRom(4), 0);
+        m.write(0x2000, 0x07);
+        assertEquals(3, highBank(m));
+    }
+
+    @Test
+    void romBanksAreOnlyLoadedWhenFirstSwitchedTo() {
+        MBC5 m = new MBC5(newRom(8), 0);
+        assertEquals(1, m.bankLoads());
+        m.write(0x2000, 2);
+        m.write(0x2000, 1);
+        m.write(0x2000, 2);
+        assertEquals(2, m.bankLoads());
+        m.write(0x2000, 3);
+        assertEquals(3, m.bankLoads());
+        m.write(0x2000, 0x0B);
+        assertEquals(3, m.bankLoads());
+        assertEquals(3, highBank(m));
+    }
+
+    @Test
+    void ramBanksAreSwitched() {
+        MBC5 m = new MBC5(newRom(2), 0x20000);
+        m.write(0xA000, 0x42);
+        assertEquals(Component.NO_DATA, m.read(0xA000));
+        m.write(0x0000, 0x0A);
+        for (int bank = 0; bank < 16; ++bank) {
+            m.write(0x4000, bank);
+            m.write(0xB000, bank + 1);
+        }
+        for (int bank = 0; bank < 16; ++bank) {
+            m.write(0x5FFF, bank);
+            assertEquals(bank + 1, m.read(0xB000));
+        }
+    }
+
+    @Test
+    void bankSwitchesMarkTheirRegionAsModified() {
+        Bus bus = new Bus();
+        MBC5 m = new MBC5(newRom(8), 0x2000);
+        m.attachTo(bus);
+        int low = bus.modificationCount(0x0000);
+        int high = bus.modificationCount(0x4000);
+        m.write(0x2000, 0x01);
+        assertEquals(high, bus.modificationCount(0x4000));
+        m.write(0x2000, 0x03);
+        assertEquals(low, bus.modificationCount(0x0000));
+        assertNotEquals(high, bus.modificationCount(0x4000));
+    }
+
+}
@@ -0,0 +1,57 @@
+package ch.epfl.gameboj.component.cpu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class AluTablesTest {
+
+    @Test
+    void addAndSubMatchAlu() {
+        for (int l = 0; l <= 0xFF; ++l) {
+            for (int r = 0; r <= 0xFF; ++r) {
+                for (boolean c : new boolean[] { false, true }) {
+                    assertEquals(Alu.add(l, r, c), AluTables.add(l, r, c));
+                    assertEquals(Alu.sub(l, r, c), AluTables.sub(l, r, c));
+                }
+            }
+        }
+    }
+
+    @Test
+    void bcdAdjustMatchesAlu() {
+        boolean[] bools = { false, true };
+        for (int v = 0; v <= 0xFF; ++v) {
+            for (boolean n : bools) {
+                for (boolean h : bools) {
+                    for (boolean c : bools) {
+                        assertEquals(Alu.bcdAdjust(v, n, h, c),
+                                AluTables.bcdAdjust(v, n, h, c));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void rotationsMatchAlu() {
+        for (int v = 0; v <= 0xFF; ++v) {
+            for (Alu.RotDir d : Alu.RotDir.values()) {
+                assertEquals(Alu.rotate(d, v), AluTables.rotate(d, v));
+                assertEquals(Alu.rotate(d, v, false), AluTables.rotate(d, v, false));
+                assertEquals(Alu.rotate(d, v, true), AluTables.rotate(d, v, true));
+            }
+        }
+    }
+
+    @Test
+    void shiftsAndSwapMatchAlu() {
+        for (int v = 0; v <= 0xFF; ++v) {
+            assertEquals(Alu.shiftLeft(v), AluTables.shiftLeft(v));
+            assertEquals(Alu.shiftRightA(v), AluTables.shiftRightA(v));
+            assertEquals(Alu.shiftRightL(v), AluTables.shiftRightL(v));
+            assertEquals(Alu.swap(v), AluTables.swap(v));
+        }
+    }
+
+}
@@ -3,12 +3,15 @@ package ch.epfl.gameboj.component.cpu;
 import ch.epfl.gameboj.AddressMap;
 import ch.epfl.gameboj.Bus;
 import ch.epfl.gameboj.GameBoy;
+import ch.epfl.gameboj.Scheduler;
 import ch.epfl.gameboj.bits.Bits;
 import ch.epfl.gameboj.component.memory.Ram;
 import ch.epfl.gameboj.component.memory.RamController;
 import ch.epfl.gameboj.component.memory.Rom;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -24,7 +27,12 @@ public class CpuTest {
     }
 
     private void assertProgramOutput(String program, int[] expectedOutput, int pc) {
-        Cpu cpu = new Cpu();
+        assertProgramOutput(program, expectedOutput, pc, new Cpu.Option[0]);
+    }
+
+    private void assertProgramOutput(String program, int[] expectedOutput, int pc,
+                                     Cpu.Option... options) {
+        Cpu cpu = new Cpu(options);
         Ram ram = new Ram(AddressMap.WORK_RAM_SIZE);
         Bus bus = connect(cpu, ram);
 
@@ -45,6 +53,26 @@ public class CpuTest {
         assertProgramOutput(program, expectedOutput, programBytes.length);
     }
 
+    private void assertTieredProgramOutput(String program, int[] expectedOutput) {
+        Cpu cpu = new Cpu(Cpu.Option.TIERED_EXECUTION);
+        Ram ram = new Ram(AddressMap.WORK_RAM_SIZE);
+        Bus bus = connect(cpu, ram);
+        Scheduler scheduler = new Scheduler();
+        cpu.attachTo(scheduler);
+
+        int[] programBytes = getProgramFromString(program);
+        for (int i = 0; i < programBytes.length; ++i) {
+            bus.write(i, programBytes[i]);
+        }
+
+        scheduler.runUntil(1_000_000);
+
+        int[] output = cpu._testGetPcSpAFBCDEHL();
+        for (int i = 0; i < expectedOutput.length; ++i) {
+            assertEquals(expectedOutput[i], output[i]);
+        }
+    }
+
     private Bus connect(Cpu cpu, Ram ram) {
         RamController ramController = new RamController(ram, 0);
         Bus bus = new Bus();
@@ -159,6 +187,272 @@ public class CpuTest {
         });
     }
 
+    @Test
+    void cpuExecutesSelfModifyingCode() {
+        assertProgramOutput(String.join(
+                " ",
+                "3C",               // A += 1, replaced by B += 1
+                "21 00 00",         // HL = 00 00
+                "36 04",            // BUS[HL] = 04 (INC B)
+                "CB 40",            // Z = !B[0]
+                "28 F6"             // if Z, jump back to 00
+        ), new int[] {
+                10, 0, 1, 0x20, 1   // A == 01, B == 01
+        });
+    }
+
+    @Test
+    void tieredCpuExecutesFibonacciCorrectly() {
+        assertTieredProgramOutput(String.join(
+                " ",
+                "31 FF FF 3E",
+                "0B CD 0A 00",
+                "76 00 FE 02",
+                "D8 C5 3D 47",
+                "CD 0A 00 4F",
+                "78 3D CD 0A",
+                "00 81 C1 C9"
+        ), new int[] {
+                9,
+                65535,
+                89 // Expected result
+        });
+    }
+
+    @Test
+    void tieredCpuExecutesModifiedHotBlock() {
+        assertTieredProgramOutput(String.join(
+                " ",
+                "0E 81",            // C = 81
+                "3C",               // A += 1, replaced by B += 1
+                "0D",               // C -= 1
+                "20 FC",            // if !Z, jump back to 02
+                "21 02 00",         // HL = 00 02
+                "36 04",            // BUS[HL] = 04 (INC B)
+                "CB 40",            // Z = !B[0]
+                "28 F1",            // if Z, jump back to 00
+                "76"                // halt
+        ), new int[] {
+                16, 0, 0x81, 0x20, 0x81, 0  // A == 81, B == 81
+        });
+    }
+
+    @Test
+    void tieredCpuMatchesInterpreterOnHotLoop() {
+        // Every part but the last two pushes AF after each instruction, which
+        // leaves a trace of A and the flags on the stack, and each part jumps
+        // to the next one, where a new block starts
+        String body = String.join(
+                " 18 00 ",
+                traced("3C", "80", "8F", "D6 13", "9A", "A3", "B0", "EE 5A", "FE 40"),
+                traced("2F", "37", "3F", "07", "17", "0F", "1F", "27"),
+                traced("CB 00", "CB 12", "CB 1B", "CB 20", "CB 2A", "CB 3B"),
+                traced("CB 30", "CB 7A", "CB C3", "CB 90", "E8 05", "E8 FB", "F8 03"),
+                traced("77", "22", "34", "35", "86", "CB 06", "CB 46", "CB FE", "19"),
+                "7E 2A 3A 0A 1A C5 F5 D1 C1 13 1B",
+                "08 00 1A FA 00 1A EA 01 1A E0 80 F0 80 E2 F2 21 00 18"
+        );
+        String prologue = "31 00 1F 21 00 18 0E 50";
+        int loop = getProgramFromString(prologue).length;
+        int call = loop + getProgramFromString(body).length;
+        int subroutine = call + 3 + 4 + 1;
+        String program = String.join(
+                " ",
+                prologue,
+                body,
+                // call if C, then loop while C != 0 and halt
+                String.format("DC %02X %02X", subroutine & 0xFF, subroutine >> 8),
+                String.format("0D C2 %02X 00", loop),
+                "76",
+                "D0 C9"             // return if !C, return
+        );
+        assertEquals(Arrays.toString(runScheduled(program)),
+                Arrays.toString(runScheduled(program, Cpu.Option.TIERED_EXECUTION)));
+        assertEquals(Arrays.toString(runScheduled(program, Cpu.Option.LAZY_FLAGS)),
+                Arrays.toString(runScheduled(program,
+                        Cpu.Option.TIERED_EXECUTION, Cpu.Option.LAZY_FLAGS)));
+        assertEquals(Arrays.toString(runScheduled(program, Cpu.Option.ALU_TABLES)),
+                Arrays.toString(runScheduled(program,
+                        Cpu.Option.TIERED_EXECUTION, Cpu.Option.ALU_TABLES)));
+    }
+
+    @Test
+    void compiledBlocksReachEveryCpuMember() {
+        // The compiled code names the members of the Cpu it uses, so that a
+        // renamed one only fails when a hot block using it runs: the first
+        // block reads and writes memory between two instructions, the second
+        // one only holds an instruction run through the interpreter
+        String program = String.join(
+                " ",
+                "31 00 1F 21 00 18 0E 50",
+                "77 7E 18 00",      // ld [hl], a; ld a, [hl]; jr 0
+                "F3",               // di
+                "0D C2 08 00",      // loop while C != 0
+                "76"
+        );
+        assertEquals(Arrays.toString(runScheduled(program)),
+                Arrays.toString(runScheduled(program, Cpu.Option.TIERED_EXECUTION)));
+        assertEquals(Arrays.toString(runScheduled(program, Cpu.Option.LAZY_FLAGS)),
+                Arrays.toString(runScheduled(program,
+                        Cpu.Option.TIERED_EXECUTION, Cpu.Option.LAZY_FLAGS)));
+    }
+
+    /** @return the given instructions, each followed by a push of AF */
+    private static String traced(String... instructions) {
+        return String.join(" F5 ", instructions) + " F5";
+    }
+
+    /**
+     * Runs a program until it halts, and gives the registers of the Cpu
+     * followed by the contents of the ram
+     */
+    private int[] runScheduled(String program, Cpu.Option... options) {
+        Cpu cpu = new Cpu(options);
+        Ram ram = new Ram(AddressMap.WORK_RAM_SIZE);
+        Bus bus = connect(cpu, ram);
+        Scheduler scheduler = new Scheduler();
+        cpu.attachTo(scheduler);
+        int[] programBytes = getProgramFromString(program);
+        for (int i = 0; i < programBytes.length; ++i)
+            bus.write(i, programBytes[i]);
+
+        scheduler.runUntil(1_000_000);
+
+        int[] registers = cpu._testGetPcSpAFBCDEHL();
+        int[] state = Arrays.copyOf(registers, registers.length + ram.size());
+        for (int i = 0; i < ram.size(); ++i)
+            state[registers.length + i] = ram.read(i);
+        return state;
+    }
+
+    @Test
+    void registerPairsAreSplitIntoRegisters() {
+        assertProgramOutput(String.join(
+                " ",
+                "01 FF 12",         // BC = 12 FF
+                "C5",               // push BC
+                "F1",               // pop AF, low bits of F are cleared
+                "11 34 56",         // DE = 56 34
+                "63",               // H = E
+                "6A"                // L = D
+        ), new int[] {
+                10, 0, 0x12, 0xF0, 0x12, 0xFF, 0x56, 0x34, 0x34, 0x56
+        });
+    }
+
+    @Test
+    void lazyFlagsMatchEagerFlags() {
+        String program = String.join(
+                " ",
+                "3E 99",            // A = 99
+                "C6 01",            // A += 01, H
+                "27",               // DAA, A == 00, Z C
+                "CE 0F",            // A += 0F + C
+                "3C",               // A += 1, C kept
+                "F5",               // push AF
+                "C1",               // pop BC
+                "D6 20",            // A -= 20, N C
+                "30 02",            // if !C, skip the next instruction
+                "DE 01",            // A -= 01 + C
+                "1F"                // rotate A right through C
+        );
+        int[] expected = new int[] {
+                17, 0, 0x77, 0x10, 0x11, 0x00, 0, 0, 0, 0
+        };
+        assertProgramOutput(program, expected, 17);
+        assertProgramOutput(program, expected, 17, Cpu.Option.LAZY_FLAGS);
+    }
+
+    @Test
+    void cpuExecutesSelfModifyingCodeOutsideOfCachedMemory() {
+        Cpu cpu = new Cpu();
+        Ram ram = new Ram(AddressMap.WORK_RAM_SIZE);
+        Bus bus = connect(cpu, ram);
+        new RamController(new Ram(0x100), AddressMap.ECHO_RAM_START).attachTo(bus);
+
+        int[] program = getProgramFromString(String.join(
+                " ",
+                "3C",               // A += 1, replaced by B += 1
+                "21 00 E0",         // HL = E0 00
+                "36 04",            // BUS[HL] = 04 (INC B)
+                "CB 40",            // Z = !B[0]
+                "28 F6"             // if Z, jump back to E0 00
+        ));
+        bus.write(0, 0xC3);         // jump to E0 00
+        bus.write(2, 0xE0);
+        for (int i = 0; i < program.length; ++i) {
+            bus.write(AddressMap.ECHO_RAM_START + i, program[i]);
+        }
+
+        cycleCpuTillPC(cpu, AddressMap.ECHO_RAM_START + program.length);
+
+        int[] output = cpu._testGetPcSpAFBCDEHL();
+        assertEquals(1, output[2]);
+        assertEquals(1, output[4]);
+    }
+
+    @Test
+    void cpuExecutesCodeModifiedThroughEchoRam() {
+        Cpu cpu = new Cpu();
+        Bus bus = new Bus();
+        cpu.attachTo(bus);
+        new RamController(new Ram(0x100), 0).attachTo(bus);
+        Ram workRam = new Ram(AddressMap.WORK_RAM_SIZE);
+        new RamController(workRam, AddressMap.WORK_RAM_START).attachTo(bus);
+        new RamController(workRam, AddressMap.ECHO_RAM_START, AddressMap.ECHO_RAM_END)
+                .attachTo(bus);
+
+        int[] program = getProgramFromString(String.join(
+                " ",
+                "3C",               // A += 1, replaced by B += 1
+                "21 00 E0",         // HL = E0 00, echo of C0 00
+                "36 04",            // BUS[HL] = 04 (INC B)
+                "CB 40",            // Z = !B[0]
+                "28 F6"             // if Z, jump back to C0 00
+        ));
+        bus.write(0, 0xC3);         // jump to C0 00
+        bus.write(2, 0xC0);
+        for (int i = 0; i < program.length; ++i) {
+            bus.write(AddressMap.WORK_RAM_START + i, program[i]);
+        }
+
+        int end = AddressMap.WORK_RAM_START + program.length;
+        for (int cycle = 0; cycle < 1000 && cpu._testGetPcSpAFBCDEHL()[0] != end; ++cycle) {
+            cpu.cycle(cycle);
+        }
+
+        int[] output = cpu._testGetPcSpAFBCDEHL();
+        assertEquals(end, output[0]);
+        assertEquals(1, output[2]);
+        assertEquals(1, output[4]);
+    }
+
+    @Test
+    void cpuNeitherUsesNorFillsCacheWhileMemoryIsBlocked() {
+        for (Cpu.Option[] options : new Cpu.Option[][] {
+                {}, { Cpu.Option.TIERED_EXECUTION } }) {
+            Cpu cpu = new Cpu(options);
+            Bus bus = connect(cpu, new Ram(AddressMap.WORK_RAM_SIZE));
+            Scheduler scheduler = new Scheduler();
+            cpu.attachTo(scheduler);
+            int[] program = getProgramFromString("3C 18 FD"); // A += 1, jump back to 00
+            for (int i = 0; i < program.length; ++i) {
+                bus.write(i, program[i]);
+            }
+            bus.write(0x38, 0x76);  // halt
+            scheduler.runUntil(1000);
+
+            // Blocked memory reads as FF, that is RST 38, even if cached
+            bus.setMemoryBlocked(true);
+            scheduler.runUntil(1100);
+            assertEquals(0x38, cpu._testGetPcSpAFBCDEHL()[0]);
+
+            bus.setMemoryBlocked(false);
+            scheduler.runUntil(1200);
+            assertEquals(0x39, cpu._testGetPcSpAFBCDEHL()[0]);
+        }
+    }
+
     @Test
     void programFailsForUnknownOpcode() {
         assertThrows(NullPointerException.class,
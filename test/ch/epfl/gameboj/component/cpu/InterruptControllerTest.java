@@ -0,0 +1,66 @@
+package ch.epfl.gameboj.component.cpu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.epfl.gameboj.component.cpu.Cpu.Interrupt;
+import org.junit.jupiter.api.Test;
+
+class InterruptControllerTest {
+
+    @Test
+    void constructorFailsForNullListener() {
+        assertThrows(NullPointerException.class,
+                () -> new InterruptController(null));
+    }
+
+    @Test
+    void onlyEnabledAndRequestedInterruptsArePending() {
+        InterruptController c = new InterruptController(() -> {});
+        c.request(Interrupt.TIMER);
+        assertFalse(c.hasPending());
+        assertNull(c.highestPending());
+        c.setEnabled(0b1110_0000);
+        assertFalse(c.hasPending());
+        c.setEnabled(0xFF);
+        assertTrue(c.hasPending());
+        assertEquals(Interrupt.TIMER, c.highestPending());
+        c.acknowledge(Interrupt.TIMER);
+        assertFalse(c.hasPending());
+        assertEquals(0, c.requested());
+        assertEquals(0xFF, c.enabled());
+    }
+
+    @Test
+    void highestPendingInterruptHasLowestIndex() {
+        InterruptController c = new InterruptController(() -> {});
+        c.setEnabled(0xFF);
+        c.setRequested(0b1_1000);
+        assertEquals(Interrupt.SERIAL, c.highestPending());
+        c.request(Interrupt.LCD_STAT);
+        assertEquals(Interrupt.LCD_STAT, c.highestPending());
+        c.request(Interrupt.VBLANK);
+        assertEquals(Interrupt.VBLANK, c.highestPending());
+    }
+
+    @Test
+    void listenerIsNotifiedWhenAnInterruptBecomesPending() {
+        int[] notifications = { 0 };
+        InterruptController c = new InterruptController(() -> ++notifications[0]);
+        c.request(Interrupt.JOYPAD);
+        c.setEnabled(Interrupt.VBLANK.mask());
+        assertEquals(0, notifications[0]);
+        c.request(Interrupt.VBLANK);
+        assertEquals(1, notifications[0]);
+        c.request(Interrupt.VBLANK);
+        c.setEnabled(0xFF);
+        assertEquals(1, notifications[0]);
+        c.setRequested(0);
+        c.request(Interrupt.JOYPAD);
+        assertEquals(2, notifications[0]);
+    }
+
+}
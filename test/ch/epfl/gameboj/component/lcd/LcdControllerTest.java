@@ -0,0 +1,316 @@
+package ch.epfl.gameboj.component.lcd;
+
+import ch.epfl.gameboj.AddressMap;
+import ch.epfl.gameboj.Bus;
+import ch.epfl.gameboj.Scheduler;
+import ch.epfl.gameboj.component.cpu.Cpu;
+import ch.epfl.gameboj.component.memory.Ram;
+import ch.epfl.gameboj.component.memory.RamController;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LcdControllerTest {
+
+    private static final long FRAME_CYCLES = 154 * 114;
+
+    private static Bus newBus(LcdController lcd) {
+        Bus bus = new Bus();
+        lcd.attachTo(bus);
+        new RamController(new Ram(AddressMap.WORK_RAM_SIZE), AddressMap.WORK_RAM_START)
+                .attachTo(bus);
+        new RamController(new Ram(AddressMap.HIGH_RAM_SIZE), AddressMap.HIGH_RAM_START)
+                .attachTo(bus);
+        for (int i = 0; i < AddressMap.OAM_RAM_SIZE; ++i)
+            bus.write(0xC100 + i, i ^ 0x3C);
+        return bus;
+    }
+
+    @Test
+    void oamIsReadAndWritten() {
+        LcdController lcd = new LcdController(new Cpu());
+        Bus bus = newBus(lcd);
+        bus.write(AddressMap.OAM_START + 3, 0xAB);
+        assertEquals(0xAB, bus.read(AddressMap.OAM_START + 3));
+        assertEquals(0xAB, lcd.read(AddressMap.OAM_START + 3));
+        assertEquals(0xFF, bus.read(AddressMap.OAM_END));
+    }
+
+    @Test
+    void blockAccessesReachRegistersThroughBus() {
+        LcdController lcd = new LcdController(new Cpu());
+        Bus bus = newBus(lcd);
+        byte[] block = { 0x12, 0x34 };
+        bus.writeBlock(0xFF42, block, 0, 2);
+        assertEquals(0x12, lcd.read(0xFF42));
+        assertEquals(0x34, lcd.read(0xFF43));
+        byte[] read = new byte[3];
+        bus.readBlock(0xFF41, read, 0, 3);
+        assertEquals(0x12, read[1]);
+        assertEquals(0x34, read[2]);
+    }
+
+    @Test
+    void dmaCopiesSourceToOam() {
+        LcdController lcd = new LcdController(new Cpu());
+        Bus bus = newBus(lcd);
+        bus.write(AddressMap.REG_DMA, 0xC1);
+        assertEquals(0xC1, bus.read(AddressMap.REG_DMA));
+        for (int i = 0; i < AddressMap.OAM_RAM_SIZE; ++i)
+            assertEquals(i ^ 0x3C, bus.read(AddressMap.OAM_START + i));
+    }
+
+    @Test
+    void dmaBlocksMemoryButHighRamDuringTransfer() {
+        LcdController lcd = new LcdController(new Cpu());
+        Bus bus = newBus(lcd);
+        Scheduler scheduler = new Scheduler();
+        lcd.attachTo(scheduler);
+        scheduler.runUntil(10);
+
+        bus.write(AddressMap.REG_DMA, 0xC1);
+        assertEquals(0xFF, bus.read(0xC100));
+        bus.write(0xC100, 0x42);
+        bus.write(AddressMap.HIGH_RAM_START, 0x42);
+        assertEquals(0x42, bus.read(AddressMap.HIGH_RAM_START));
+        assertEquals(0xC1, bus.read(AddressMap.REG_DMA));
+
+        scheduler.runUntil(10 + 159);
+        assertEquals(0xFF, bus.read(0xC101));
+        scheduler.runUntil(10 + 160);
+        assertEquals(0x3C, bus.read(0xC100));
+        assertEquals(0x3C, bus.read(AddressMap.OAM_START));
+    }
+
+    @Test
+    void backgroundFollowsTileDataWrittenThroughBus() {
+        LcdController lcd = new LcdController(new Cpu());
+        Bus bus = newBus(lcd);
+        Scheduler scheduler = new Scheduler();
+        lcd.attachTo(scheduler);
+        bus.write(0x8010, 0xFF);
+        bus.write(0x8011, 0xFF);
+        bus.write(0x9800, 0x01);
+        bus.write(0xFF47, 0b11_10_01_00);
+        bus.write(0xFF40, 0x91);
+
+        scheduler.runUntil(2 * FRAME_CYCLES);
+        assertEquals(3, lcd.currentImage().get(7, 0));
+        assertEquals(0, lcd.currentImage().get(8, 0));
+        assertEquals(0, lcd.currentImage().get(0, 1));
+
+        bus.write(0x8010, 0xF0);
+        bus.write(0x8011, 0x00);
+        scheduler.runUntil(4 * FRAME_CYCLES);
+        assertEquals(1, lcd.currentImage().get(3, 0));
+        assertEquals(0, lcd.currentImage().get(4, 0));
+    }
+
+    @Test
+    void backgroundFollowsTileDataWrittenDirectly() {
+        LcdController lcd = new LcdController(new Cpu());
+        Scheduler scheduler = new Scheduler();
+        lcd.attachTo(scheduler);
+        lcd.write(0x9000, 0xFF);
+        lcd.write(0xFF47, 0b11_10_01_00);
+        lcd.write(0xFF40, 0x81);
+
+        scheduler.runUntil(2 * FRAME_CYCLES);
+        assertEquals(1, lcd.currentImage().get(0, 0));
+
+        lcd.write(0x9001, 0xFF);
+        scheduler.runUntil(4 * FRAME_CYCLES);
+        assertEquals(3, lcd.currentImage().get(0, 0));
+        assertEquals(0, lcd.currentImage().get(0, 1));
+    }
+
+    @Test
+    void backgroundFollowsTileMapWrites() {
+        LcdController lcd = new LcdController(new Cpu());
+        Bus bus = newBus(lcd);
+        Scheduler scheduler = new Scheduler();
+        lcd.attachTo(scheduler);
+        bus.write(0x8010, 0xFF);
+        bus.write(0x8011, 0xFF);
+        bus.write(0xFF47, 0b11_10_01_00);
+        bus.write(0xFF40, 0x91);
+
+        scheduler.runUntil(2 * FRAME_CYCLES);
+        assertEquals(0, lcd.currentImage().get(8, 8));
+
+        bus.write(0x9821, 0x01);
+        scheduler.runUntil(4 * FRAME_CYCLES);
+        assertEquals(3, lcd.currentImage().get(8, 8));
+        assertEquals(0, lcd.currentImage().get(8, 0));
+
+        lcd.write(0x9821, 0x00);
+        scheduler.runUntil(6 * FRAME_CYCLES);
+        assertEquals(0, lcd.currentImage().get(8, 8));
+    }
+
+    @Test
+    void backgroundFollowsPaletteAndAreaChanges() {
+        LcdController lcd = new LcdController(new Cpu());
+        Bus bus = newBus(lcd);
+        Scheduler scheduler = new Scheduler();
+        lcd.attachTo(scheduler);
+        bus.write(0x8010, 0xFF);
+        bus.write(0x9800, 0x01);
+        bus.write(0xFF47, 0b11_10_01_00);
+        bus.write(0xFF40, 0x91);
+
+        scheduler.runUntil(2 * FRAME_CYCLES);
+        assertEquals(1, lcd.currentImage().get(0, 0));
+
+        bus.write(0xFF47, 0b00_10_11_00);
+        scheduler.runUntil(4 * FRAME_CYCLES);
+        assertEquals(3, lcd.currentImage().get(0, 0));
+
+        bus.write(0xFF40, 0x99);
+        scheduler.runUntil(6 * FRAME_CYCLES);
+        assertEquals(0, lcd.currentImage().get(0, 0));
+    }
+
+    private static void drawScene(Bus bus) {
+        for (int i = 0; i < 4 * 16; ++i)
+            bus.write(0x8000 + i, (i * 0x9D + 0x31) & 0xFF);
+        for (int i = 0; i < 0x800; ++i)
+            bus.write(0x9800 + i, (i * 7 / 3) % 4);
+        bus.write(0xFF42, 0x13);
+        bus.write(0xFF43, 0xF5);
+        bus.write(0xFF4A, 0x20);
+        bus.write(0xFF4B, 0x47);
+        bus.write(0xFF47, 0b00_11_01_10);
+        bus.write(0xFF40, 0xF1);
+    }
+
+    @Test
+    void frameBufferDrawsSameImagesAsLines() {
+        LcdController lines = new LcdController(new Cpu());
+        LcdController frames = new LcdController(new Cpu(), LcdController.Option.FRAME_BUFFER);
+        Bus linesBus = newBus(lines), framesBus = newBus(frames);
+        Scheduler scheduler = new Scheduler();
+        lines.attachTo(scheduler);
+        frames.attachTo(scheduler);
+        assertEquals(lines.currentImage(), frames.currentImage());
+
+        drawScene(linesBus);
+        drawScene(framesBus);
+        scheduler.runUntil(2 * FRAME_CYCLES);
+        LcdImage image = frames.currentImage();
+        assertEquals(lines.currentImage(), image);
+        assertNotEquals(new LcdImage.Builder(160, 144).build(), image);
+
+        for (Bus bus : new Bus[] { linesBus, framesBus }) {
+            bus.write(0xFF47, 0b11_10_01_00);
+            bus.write(0x9A00, 0x02);
+            bus.write(0xFF40, 0xE1);
+        }
+        scheduler.runUntil(4 * FRAME_CYCLES);
+        assertEquals(lines.currentImage(), frames.currentImage());
+        assertNotEquals(image, frames.currentImage());
+    }
+
+    @Test
+    void frameBufferDrawsFramesWithoutAllocating() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        LcdController lcd = new LcdController(new Cpu(), LcdController.Option.FRAME_BUFFER);
+        Bus bus = newBus(lcd);
+        Scheduler scheduler = new Scheduler();
+        lcd.attachTo(scheduler);
+        drawScene(bus);
+        scheduler.runUntil(2 * FRAME_CYCLES);
+
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        scheduler.runUntil(12 * FRAME_CYCLES);
+        allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+        assertTrue(allocated < 1024, allocated + " bytes allocated");
+    }
+
+    @Test
+    void copyCurrentImageCopiesTheSamePixelsInBothModes() {
+        int[] palette = { 0xFFFFFFFF, 0xFFAAAAAA, 0xFF555555, 0xFF000000 };
+        LcdController lines = new LcdController(new Cpu());
+        LcdController frames = new LcdController(new Cpu(), LcdController.Option.FRAME_BUFFER);
+        drawScene(newBus(lines));
+        drawScene(newBus(frames));
+        Scheduler scheduler = new Scheduler();
+        lines.attachTo(scheduler);
+        frames.attachTo(scheduler);
+        scheduler.runUntil(2 * FRAME_CYCLES);
+
+        byte[] linesColors = new byte[160 * 144], framesColors = new byte[160 * 144];
+        lines.copyCurrentImage(linesColors);
+        frames.copyCurrentImage(framesColors);
+        assertArrayEquals(linesColors, framesColors);
+        assertEquals(lines.currentImage().get(100, 50), framesColors[50 * 160 + 100]);
+
+        int[] linesPixels = new int[160 * 144], framesPixels = new int[160 * 144];
+        lines.copyCurrentImage(linesPixels, palette);
+        frames.copyCurrentImage(framesPixels, palette);
+        assertArrayEquals(linesPixels, framesPixels);
+        assertEquals(palette[framesColors[0]], framesPixels[0]);
+    }
+
+    @Test
+    void headlessKeepsTimingAndInterrupts() {
+        Cpu linesCpu = new Cpu(), headlessCpu = new Cpu();
+        LcdController lines = new LcdController(linesCpu);
+        LcdController headless = new LcdController(headlessCpu, LcdController.Option.HEADLESS);
+        Bus linesBus = newBus(lines), headlessBus = newBus(headless);
+        linesCpu.attachTo(linesBus);
+        headlessCpu.attachTo(headlessBus);
+        Scheduler scheduler = new Scheduler();
+        lines.attachTo(scheduler);
+        headless.attachTo(scheduler);
+        for (Bus bus : new Bus[] { linesBus, headlessBus }) {
+            bus.write(0xFF41, 0b0111_1000);
+            bus.write(0xFF45, 0x42);
+            drawScene(bus);
+        }
+
+        for (long cycle = 0; cycle < 2 * FRAME_CYCLES; cycle += 7) {
+            scheduler.runUntil(cycle);
+            for (int address : new int[] { 0xFF0F, 0xFF41, 0xFF44 })
+                assertEquals(linesBus.read(address), headlessBus.read(address));
+            linesBus.write(0xFF0F, 0);
+            headlessBus.write(0xFF0F, 0);
+        }
+    }
+
+    @Test
+    void headlessDrawsImagesOnlyWhenRequested() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        LcdController lines = new LcdController(new Cpu());
+        LcdController headless = new LcdController(new Cpu(), LcdController.Option.HEADLESS);
+        Bus headlessBus = newBus(headless);
+        drawScene(newBus(lines));
+        drawScene(headlessBus);
+        Scheduler scheduler = new Scheduler();
+        lines.attachTo(scheduler);
+        headless.attachTo(scheduler);
+        scheduler.runUntil(2 * FRAME_CYCLES);
+        assertEquals(lines.currentImage(), headless.currentImage());
+
+        headlessBus.write(0xFF40, 0x71);
+        assertEquals(new LcdImage.Builder(160, 144).build(), headless.currentImage());
+
+        LcdController idle = new LcdController(new Cpu(), LcdController.Option.HEADLESS);
+        drawScene(newBus(idle));
+        Scheduler idleScheduler = new Scheduler();
+        idle.attachTo(idleScheduler);
+        idleScheduler.runUntil(2 * FRAME_CYCLES);
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        idleScheduler.runUntil(12 * FRAME_CYCLES);
+        allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+        assertTrue(allocated < 1024, allocated + " bytes allocated");
+    }
+
+}
@@ -0,0 +1,87 @@
+package ch.epfl.gameboj.component.lcd;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LcdImageTest {
+
+    private static final int[] PALETTE = { 0xFFFFFFFF, 0xFFAAAAAA, 0xFF555555, 0xFF000000 };
+
+    private static LcdImageLine newLine(int y) {
+        LcdImageLine.Builder line = new LcdImageLine.Builder(64);
+        for (int i = 0; i < 8; ++i)
+            line.setBytes(i, (i * 0x35 + y) & 0xFF, (i * 0x5B + 3 * y) & 0xFF);
+        return line.build();
+    }
+
+    private static LcdImage newImage() {
+        LcdImage.Builder builder = new LcdImage.Builder(64, 3);
+        for (int y = 0; y < 3; ++y)
+            builder.setLine(y, newLine(y));
+        return builder.build();
+    }
+
+    @Test
+    void copyColorsCopiesEveryPixel() {
+        LcdImage image = newImage();
+        byte[] colors = new byte[64 * 3];
+        int[] pixels = new int[64 * 3];
+        image.copyColors(colors);
+        image.copyColors(pixels, PALETTE);
+        for (int y = 0; y < 3; ++y) {
+            for (int x = 0; x < 64; ++x) {
+                assertEquals(image.get(x, y), colors[y * 64 + x]);
+                assertEquals(PALETTE[image.get(x, y)], pixels[y * 64 + x]);
+            }
+        }
+    }
+
+    @Test
+    void copyColorsCopiesPixelsOfNarrowerImage() {
+        LcdImage wide = newImage();
+        LcdImage image = new LcdImage(40, 3, List.of(newLine(0), newLine(1), newLine(2)));
+        byte[] colors = new byte[40 * 3];
+        int[] pixels = new int[40 * 3];
+        image.copyColors(colors);
+        image.copyColors(pixels, PALETTE);
+        for (int y = 0; y < 3; ++y) {
+            for (int x = 0; x < 40; ++x) {
+                assertEquals(wide.get(x, y), colors[y * 40 + x]);
+                assertEquals(PALETTE[wide.get(x, y)], pixels[y * 40 + x]);
+            }
+        }
+    }
+
+    @Test
+    void copyColorsWritesIntoBufferedImage() {
+        LcdImage image = newImage();
+        BufferedImage bufferedImage = new BufferedImage(64, 3, BufferedImage.TYPE_INT_ARGB);
+        image.copyColors(bufferedImage, PALETTE);
+        for (int y = 0; y < 3; ++y) {
+            for (int x = 0; x < 64; ++x)
+                assertEquals(PALETTE[image.get(x, y)], bufferedImage.getRGB(x, y));
+        }
+    }
+
+    @Test
+    void copyColorsFailsOnInvalidArguments() {
+        LcdImage image = newImage();
+        assertThrows(IllegalArgumentException.class,
+                () -> image.copyColors(new byte[64 * 3 - 1]));
+        assertThrows(IllegalArgumentException.class,
+                () -> image.copyColors(new int[64 * 3], new int[3]));
+        assertThrows(IllegalArgumentException.class,
+                () -> image.copyColors(new BufferedImage(64, 3, BufferedImage.TYPE_BYTE_GRAY), PALETTE));
+        assertThrows(IllegalArgumentException.class,
+                () -> image.copyColors(new BufferedImage(64, 4, BufferedImage.TYPE_INT_RGB), PALETTE));
+        assertThrows(IllegalArgumentException.class,
+                () -> image.copyColors(new BufferedImage(64, 6, BufferedImage.TYPE_INT_RGB)
+                        .getSubimage(0, 3, 64, 3), PALETTE));
+    }
+
+}
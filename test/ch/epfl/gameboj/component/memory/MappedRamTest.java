@@ -0,0 +1,38 @@
+package ch.epfl.gameboj.component.memory;
+
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedRamTest {
+    @Test
+    void ofFileWritesToFile(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("test.sav");
+        Ram ram = Ram.ofFile(file.toFile(), 0x2000);
+        assertEquals(0x2000, ram.size());
+        ram.write(0x1234, 0xAB);
+        ram.flush();
+        byte[] contents = Files.readAllBytes(file);
+        assertEquals(0x2000, contents.length);
+        assertEquals(0xAB, Byte.toUnsignedInt(contents[0x1234]));
+    }
+
+    @Test
+    void ofFileReadsExistingFile(@TempDir Path directory) throws IOException {
+        byte[] contents = new byte[0x800];
+        newRandom().nextBytes(contents);
+        Path file = Files.write(directory.resolve("test.sav"), contents);
+        Ram ram = Ram.ofFile(file.toFile(), 0x800);
+        for (int i = 0; i < contents.length; ++i)
+            assertEquals(Byte.toUnsignedInt(contents[i]), ram.read(i));
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> ram.read(0x800));
+    }
+}
@@ -0,0 +1,28 @@
+package ch.epfl.gameboj.component.memory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import ch.epfl.gameboj.Bus;
+
+class OffHeapRamControllerTest extends RamControllerTest {
+    @Override
+    Ram newRam(int size) {
+        return Ram.offHeap(size);
+    }
+
+    @Test
+    void ramIsAccessibleThroughBus() {
+        Bus bus = new Bus();
+        Ram ram = newRamFF();
+        new RamController(ram, 0xC000).attachTo(bus);
+        bus.write(0xC010, 0xAB);
+        assertEquals(0xAB, ram.read(0x10));
+        assertEquals(0x20, bus.read(0xC020));
+        byte[] block = new byte[0x100];
+        bus.readBlock(0xC000, block, 0, block.length);
+        assertEquals(0xAB, Byte.toUnsignedInt(block[0x10]));
+        assertEquals(0xFF, Byte.toUnsignedInt(block[0xFF]));
+    }
+}
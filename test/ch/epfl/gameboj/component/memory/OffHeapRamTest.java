@@ -0,0 +1,27 @@
+package ch.epfl.gameboj.component.memory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+import org.junit.jupiter.api.Test;
+
+class OffHeapRamTest extends RamTest {
+    @Override
+    Ram newRam(int size) {
+        return Ram.offHeap(size);
+    }
+
+    @Test
+    void readOnlyBufferReflectsData() {
+        Ram ram = newRam(0x100);
+        ByteBuffer view = ram.asReadOnlyBuffer();
+        assertEquals(0x100, view.capacity());
+        ram.write(0x42, 0xAB);
+        assertEquals(0xAB, Byte.toUnsignedInt(view.get(0x42)));
+        assertThrows(ReadOnlyBufferException.class,
+                () -> view.put(0, (byte) 1));
+    }
+}
@@ -16,13 +16,17 @@ import ch.epfl.gameboj.component.Component;
 import ch.epfl.gameboj.component.ComponentTest;
 
 class RamControllerTest implements ComponentTest {
+    Ram newRam(int size) {
+        return new Ram(size);
+    }
+
     @Override
     public Component newComponent() {
-        return new RamController(new Ram(1), 0);
+        return new RamController(newRam(1), 0);
     }
 
     Ram newRamFF() {
-        Ram r = new Ram(0xFF + 1);
+        Ram r = newRam(0xFF + 1);
         for (int i = 0; i <= 0xFF; ++i)
             r.write(i, i);
         return r;
@@ -99,4 +103,34 @@ class RamControllerTest implements ComponentTest {
         for (int i = 0; i < r.size(); ++i)
             assertEquals(i, r.read(i));
     }
+
+    @Test
+    void readBlockOnlyCopiesValuesWithinRange() {
+        RamController c = new RamController(newRamFF(), 0x1000, 0x1080);
+        byte[] block = new byte[0x100];
+        c.readBlock(0x0FC0, block, 0, block.length);
+        for (int i = 0; i < block.length; ++i) {
+            int expected = (0x40 <= i && i < 0xC0) ? i - 0x40 : 0;
+            assertEquals(expected, Byte.toUnsignedInt(block[i]));
+        }
+    }
+
+    @Test
+    void writeBlockOnlyCopiesValuesWithinRange() {
+        Ram r = newRamFF();
+        RamController c = new RamController(r, 0x1000, 0x1080);
+        byte[] block = new byte[0x100];
+        c.writeBlock(0x0FC0, block, 0, block.length);
+        for (int i = 0; i < r.size(); ++i)
+            assertEquals(i < 0x80 ? 0 : i, r.read(i));
+    }
+
+    @Test
+    void readBlockFailsForInvalidBlock() {
+        RamController c = new RamController(newRamFF(), 0);
+        assertThrows(IllegalArgumentException.class,
+                () -> c.readBlock(0xFFF0, new byte[0x20], 0, 0x20));
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> c.readBlock(0, new byte[0x20], 0x10, 0x20));
+    }
 }
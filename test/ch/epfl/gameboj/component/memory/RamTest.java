@@ -12,13 +12,17 @@ import org.junit.jupiter.api.Test;
 import ch.epfl.gameboj.component.memory.Ram;
 
 class RamTest {
+    Ram newRam(int size) {
+        return new Ram(size);
+    }
+
     @Test
     void constructorFailsForNegativeSize() {
         Random rng = newRandom();
         for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
             int v = - rng.nextInt(Integer.MAX_VALUE);
             assertThrows(IllegalArgumentException.class,
-                    () -> new Ram(v));
+                    () -> newRam(v));
         }
     }
 
@@ -27,7 +31,7 @@ class RamTest {
         Random rng = newRandom();
         for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
             int s = rng.nextInt(100_000);
-            Ram r = new Ram(s);
+            Ram r = newRam(s);
             assertEquals(s, r.size());
         }
     }
@@ -36,7 +40,7 @@ class RamTest {
     void readReadsWhatWriteWrote() {
         Random rng = newRandom();
         int size = 10_000;
-        Ram r = new Ram(size);
+        Ram r = newRam(size);
         for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
             int a = rng.nextInt(size);
             int b = rng.nextInt() & 0xFF;
@@ -47,7 +51,7 @@ class RamTest {
 
     @Test
     void readFailsForInvalidIndex() {
-        Ram ram = new Ram(0);
+        Ram ram = newRam(0);
         Random rng = newRandom();
         for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
             int j = 0;
@@ -62,7 +66,7 @@ class RamTest {
     @Test
     void writeFailsForInvalidIndex() {
         int size = 100;
-        Ram ram = new Ram(size);
+        Ram ram = newRam(size);
         Random rng = newRandom();
         for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
             int j = 0;
@@ -76,7 +80,7 @@ class RamTest {
     
     @Test
     void writeFailsForInvalidValue() {
-        Ram ram = new Ram(1);
+        Ram ram = newRam(1);
         Random rng = newRandom();
         for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
             int j = 0;
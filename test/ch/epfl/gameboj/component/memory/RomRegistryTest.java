@@ -0,0 +1,116 @@
+package ch.epfl.gameboj.component.memory;
+
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RomRegistryTest {
+
+    private static byte[] randomData(int size) {
+        byte[] data = new byte[size];
+        newRandom().nextBytes(data);
+        return data;
+    }
+
+    @Test
+    void internFailsForNullRom() {
+        assertThrows(NullPointerException.class,
+                () -> new RomRegistry().intern(null));
+    }
+
+    @Test
+    void internReturnsRegisteredRomWithSameContents() {
+        RomRegistry registry = new RomRegistry();
+        byte[] data = randomData(0x8000);
+        Rom r1 = new Rom(data);
+        Rom r2 = new Rom(data);
+        assertSame(r1, registry.intern(r1));
+        assertSame(r1, registry.intern(r1));
+        Rom shared = registry.intern(r2);
+        assertSame(shared, registry.intern(shared));
+        assertEquals(1, registry.size());
+        assertEquals(0x8000, registry.savedBytes());
+        assertNotSame(r2, shared);
+        assertEquals(r1.data(), shared.data());
+    }
+
+    @Test
+    void savedBytesOnlyCountsRomsStillInUse() {
+        RomRegistry registry = new RomRegistry();
+        byte[] data = randomData(0x4000);
+        Rom r1 = registry.intern(new Rom(data));
+        internAndDrop(registry, data);
+        for (int i = 0; i < 100 && registry.savedBytes() != 0; ++i)
+            System.gc();
+        assertEquals(0, registry.savedBytes());
+        assertEquals(1, registry.size());
+        Rom r2 = registry.intern(new Rom(data));
+        assertEquals(0x4000, registry.savedBytes());
+        assertEquals(r1.data(), r2.data());
+    }
+
+    private static void internAndDrop(RomRegistry registry, byte[] data) {
+        registry.intern(new Rom(data));
+        assertEquals(data.length, registry.savedBytes());
+    }
+
+    @Test
+    void internKeepsRomsWithDifferentContents() {
+        RomRegistry registry = new RomRegistry();
+        byte[] data = randomData(0x100);
+        Rom r1 = new Rom(data);
+        data[0x42] ^= 1;
+        Rom r2 = new Rom(data);
+        assertSame(r1, registry.intern(r1));
+        assertSame(r2, registry.intern(r2));
+        assertNotSame(r1, registry.intern(new Rom(new byte[0x101])));
+        assertEquals(3, registry.size());
+        assertEquals(0, registry.savedBytes());
+    }
+
+    @Test
+    void internComparesContentsOfRomsWithSameHeader() {
+        RomRegistry registry = new RomRegistry();
+        byte[] data = randomData(0x8000);
+        Rom r1 = new Rom(data);
+        data[0x7FFF] ^= 1;
+        Rom r2 = new Rom(data);
+        data[0x14D] ^= 1;
+        Rom r3 = new Rom(data);
+        assertSame(r1, registry.intern(r1));
+        assertSame(r2, registry.intern(r2));
+        assertSame(r3, registry.intern(r3));
+        Rom shared = registry.intern(new Rom(data));
+        assertEquals(3, registry.size());
+        assertEquals(0x8000, registry.savedBytes());
+        assertEquals(r3.data(), shared.data());
+        assertNotEquals(r1.data(), r2.data());
+    }
+
+    @Test
+    void internSharesMappedFilesWithSameContents(@TempDir Path directory)
+            throws IOException {
+        byte[] data = randomData(0x8000);
+        Path f1 = Files.write(directory.resolve("a.gb"), data);
+        Path f2 = Files.write(directory.resolve("b.gb"), data);
+        RomRegistry registry = new RomRegistry();
+        Rom r1 = registry.intern(Rom.ofFile(f1.toFile()));
+        Rom r2 = registry.intern(Rom.ofFile(f2.toFile()));
+        Rom r3 = registry.intern(new Rom(data));
+        assertEquals(1, registry.size());
+        assertEquals(2 * 0x8000, registry.savedBytes());
+        assertEquals(r1.data(), r2.data());
+        assertEquals(r1.data(), r3.data());
+    }
+
+}
@@ -4,13 +4,19 @@ package ch.epfl.gameboj.component.memory;
 
 import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
 import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Random;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import ch.epfl.gameboj.component.memory.Rom;
 
@@ -57,4 +63,41 @@ class RomTest {
                     () -> rom.read(k));
         }
     }
+
+    @Test
+    void ofFileReturnsContentsOfFile(@TempDir Path directory) throws IOException {
+        byte[] a = new byte[0x8000];
+        newRandom().nextBytes(a);
+        Path file = directory.resolve("test.gb");
+        Files.write(file, a);
+        Rom r = Rom.ofFile(file.toFile());
+        assertEquals(a.length, r.size());
+        for (int j = 0; j < a.length; ++j)
+            assertEquals(Byte.toUnsignedInt(a[j]), r.read(j));
+        byte[] block = new byte[0x100];
+        r.readBlock(0x7F00, block, 0, block.length);
+        assertArrayEquals(Arrays.copyOfRange(a, 0x7F00, 0x8000), block);
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> r.read(a.length));
+    }
+
+    @Test
+    void sliceSharesPartOfData() {
+        byte[] a = new byte[0x100];
+        newRandom().nextBytes(a);
+        Rom r = new Rom(a).slice(0x40, 0x80);
+        assertEquals(0x80, r.size());
+        for (int j = 0; j < r.size(); ++j)
+            assertEquals(Byte.toUnsignedInt(a[0x40 + j]), r.read(j));
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> r.read(0x80));
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> r.slice(0x40, 0x41));
+    }
+
+    @Test
+    void ofFileFailsForMissingFile(@TempDir Path directory) {
+        File file = directory.resolve("missing.gb").toFile();
+        assertThrows(IOException.class, () -> Rom.ofFile(file));
+    }
 }